@@ -6,6 +6,9 @@ public interface ApiConstants {
     int TAG_AGGRESSOR_SIDE = 2446;
 
     String TRADE_SESSION_QUALIFIER = "TRADE";
+    //session setting, RAW decodes market data from the message text, QUICKFIX (default) from the groups
+    String SESSION_MARKET_DATA_DECODER = "MarketDataDecoder";
+    String MARKET_DATA_DECODER_RAW = "RAW";
 
     String INVALID_OR_UNSUPPORTED_REQUEST = "Invalid or unsupported request";
     String NO_INSTRUMENTS_FOUND_THAT_MATCH_SELECTION_CRITERIA = "No instruments found that match selection criteria";
@@ -15,14 +18,44 @@ public interface ApiConstants {
     String CRYPTOSPOT = "CRYPTOSPOT";
 
     String CONFIG_RENKO_SIZE = "renko.size";
+    String CONFIG_RENKO_BOX = "renko.box";
+    String CONFIG_RENKO_REVERSAL = "renko.reversal";
+    String CONFIG_RENKO_ATR_BARS = "renko.atr.bars";
+    String CONFIG_RENKO_ATR_BAR_SECONDS = "renko.atr.bar.seconds";
     String CONFIG_ORDER_SIZE = "order.size";
     String CONFIG_ORDER_MAX_POSITIONS_HELD = "order.max.positions.held";
+    String CONFIG_RISK_MAX_ORDER_SIZE = "risk.max.order.size";
+    String CONFIG_RISK_MAX_NOTIONAL = "risk.max.notional";
+    String CONFIG_RISK_MAX_OPEN_ORDERS = "risk.max.open.orders";
+    String CONFIG_RISK_PRICE_COLLAR_BPS = "risk.price.collar.bps";
+    String CONFIG_RISK_MAX_POSITION = "risk.max.position";
+    String CONFIG_ORDER_RATE_PER_SECOND = "order.rate.per.second";
+    String CONFIG_ORDER_RATE_PER_WINDOW = "order.rate.per.window";
+    String CONFIG_ORDER_RATE_WINDOW_SECONDS = "order.rate.window.seconds";
     String CONFIG_FIX_SESSION_CONFIG = "fix.session.config";
     String CONFIG_FIX_SESSION_USERNAME = "fix.session.username";
     String CONFIG_FIX_SESSION_PASSWORD = "fix.session.password";
     String CONFIG_FIX_SESSION_ACCOUNT_ID = "fix.session.account.id";
     String CONFIG_SANDBOX_EXECUTION = "sandbox.execution";
     String CONFIG_PRICE_SOURCE = "price.source";
+    String CONFIG_EVENT_PROCESSOR_RING_SIZE = "event.processor.ring.size";
+    String CONFIG_EVENT_PROCESSOR_WAIT_STRATEGY = "event.processor.wait.strategy";
+    String CONFIG_EVENT_PROCESSOR_LANES = "event.processor.lanes";
+    String CONFIG_EVENT_PROCESSOR_CONFLATION = "event.processor.conflation";
+    String CONFIG_EVENT_PROCESSOR_BATCH_SIZE = "event.processor.batch.size";
+    String CONFIG_EVENT_PROCESSOR_OVERFLOW_MARKET_DATA = "event.processor.overflow.market.data";
+    String CONFIG_EVENT_PROCESSOR_OVERFLOW_ORDERS = "event.processor.overflow.orders";
+    String CONFIG_EVENT_PROCESSOR_OVERFLOW_SESSION = "event.processor.overflow.session";
+    String CONFIG_EVENT_PROCESSOR_LATENCY_TRACKING = "event.processor.latency.tracking";
+    String CONFIG_EVENT_PROCESSOR_LATENCY_LOG_PERIOD = "event.processor.latency.log.period";
+    String CONFIG_JOURNAL_DIR = "journal.dir";
+    String CONFIG_JOURNAL_SEGMENT_SIZE = "journal.segment.size";
+    String CONFIG_REPLAY_SYMBOL = "replay.symbol";
+    String CONFIG_REPLAY_PRICE_POWER = "replay.price.power";
+    String CONFIG_REPLAY_SIZE_POWER = "replay.size.power";
+    String CONFIG_BOOK_TOB_PER_BATCH = "book.tob.per.batch";
+    String CONFIG_BOOK_VWAP_DEPTH = "book.vwap.depth";
+    String CONFIG_BOOK_MIN_PRICE_CHANGE = "book.min.price.change";
     String SAFARI_AGENT_STRING = "Safari/";
     int MINIMUM_WEBKIT_VERSION = 603;
 }
\ No newline at end of file
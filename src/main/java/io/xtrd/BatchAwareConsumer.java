@@ -0,0 +1,22 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+import java.util.function.Consumer;
+
+/**
+ * Consumer told when the worker has drained its current batch, so expensive work
+ * can be done once per batch instead of once per event.
+ */
+public interface BatchAwareConsumer<T extends IEvent> extends Consumer<T> {
+
+    void onEvent(T event);
+
+    //called on the worker thread after a batch in which the consumer received at least one event
+    void onEndOfBatch();
+
+    @Override
+    default void accept(T event) {
+        onEvent(event);
+    }
+}
@@ -0,0 +1,8 @@
+package io.xtrd;
+
+//wall clock of the event processor consumers, replaced by the recorded time on replay
+public interface Clock {
+    Clock SYSTEM = System::currentTimeMillis;
+
+    long currentTimeMillis();
+}
@@ -0,0 +1,50 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+//conflator and guards of one event class, typed by the event processor when they are registered
+class ConflationStage {
+    private final AtomicLong conflatedCount = new AtomicLong();
+    private volatile Conflator<IEvent> conflator;
+    private volatile List<Predicate<IEvent>> guards = Collections.emptyList();
+
+    Conflator<IEvent> getConflator() {
+        return conflator;
+    }
+
+    void setConflator(Conflator<IEvent> conflator) {
+        this.conflator = conflator;
+    }
+
+    synchronized void addGuard(Predicate<IEvent> guard) {
+        List<Predicate<IEvent>> result = new ArrayList<>(guards);
+        result.add(guard);
+        guards = result;
+    }
+
+    //an event one of the consumers must see, it can't be superseded by a newer one
+    boolean mustDeliver(IEvent event) {
+        List<Predicate<IEvent>> guards = this.guards;
+        for (int i = 0; i < guards.size(); i++) {
+            if (guards.get(i).test(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void conflated() {
+        //single writer, the worker owning the event type
+        conflatedCount.lazySet(conflatedCount.get() + 1);
+    }
+
+    long getConflatedCount() {
+        return conflatedCount.get();
+    }
+}
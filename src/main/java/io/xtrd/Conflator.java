@@ -0,0 +1,11 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+public interface Conflator<T extends IEvent> {
+
+    /**
+     * @return event carrying the effect of both, or null when the pair can't be merged and has to be delivered one by one
+     */
+    T conflate(T older, T newer);
+}
@@ -0,0 +1,153 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Handlers per event class, indexed by a dense type id. A class gets the handlers of every registered
+ * class or interface it is assignable to, in registration order. Classes that were not known when the
+ * table was compiled are resolved once, on first dispatch, by the worker thread.
+ */
+class DispatchTable {
+    private static final Handler<?>[] NO_HANDLERS = new Handler<?>[0];
+    private static final AtomicInteger nextTypeId = new AtomicInteger();
+    private static final ClassValue<Integer> typeIds = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return nextTypeId.getAndIncrement();
+        }
+    };
+    private final Handler<?>[] registeredHandlers;
+    private final Map<Class<?>, ConflationStage> conflationStages;
+    private final BatchAwareConsumer<?>[] batchListeners;
+    //listeners that received an event in the current batch
+    private final boolean[] batchTouched;
+    private Entry[] entries;
+
+    DispatchTable(List<Handler<?>> handlers, Map<Class<?>, ConflationStage> conflationStages) {
+        registeredHandlers = handlers.toArray(new Handler<?>[0]);
+        this.conflationStages = new HashMap<>(conflationStages);
+        List<BatchAwareConsumer<?>> listeners = new ArrayList<>();
+        for (Handler<?> handler : registeredHandlers) {
+            if (handler.consumer instanceof BatchAwareConsumer && !containsInstance(listeners, handler.consumer)) {
+                listeners.add((BatchAwareConsumer<?>) handler.consumer);
+            }
+        }
+        batchListeners = listeners.toArray(new BatchAwareConsumer<?>[0]);
+        batchTouched = new boolean[batchListeners.length];
+        entries = new Entry[Math.max(nextTypeId.get(), 16)];
+        for (Handler<?> handler : registeredHandlers) {
+            entryFor(handler.eventClass);
+        }
+    }
+
+    static int typeId(Class<?> clazz) {
+        return typeIds.get(clazz);
+    }
+
+    Entry entryFor(Class<?> clazz) {
+        int typeId = typeIds.get(clazz);
+        if (typeId < entries.length) {
+            Entry result = entries[typeId];
+            if (result != null) {
+                return result;
+            }
+        } else {
+            Entry[] grown = new Entry[Math.max(typeId + 1, entries.length * 2)];
+            System.arraycopy(entries, 0, grown, 0, entries.length);
+            entries = grown;
+        }
+        Handler<?>[] handlers = resolve(clazz);
+        Entry result = new Entry(handlers, conflationStages.get(clazz), batchListenerIds(handlers));
+        entries[typeId] = result;
+        return result;
+    }
+
+    void touched(Entry entry) {
+        int[] ids = entry.batchListenerIds;
+        for (int i = 0; i < ids.length; i++) {
+            batchTouched[ids[i]] = true;
+        }
+    }
+
+    void endOfBatch(Logger logger) {
+        for (int i = 0; i < batchTouched.length; i++) {
+            if (batchTouched[i]) {
+                batchTouched[i] = false;
+                try {
+                    batchListeners[i].onEndOfBatch();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private int[] batchListenerIds(Handler<?>[] handlers) {
+        int[] result = new int[handlers.length];
+        int count = 0;
+        for (Handler<?> handler : handlers) {
+            for (int i = 0; i < batchListeners.length; i++) {
+                if (batchListeners[i] == handler.consumer) {
+                    result[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean containsInstance(List<BatchAwareConsumer<?>> listeners, Consumer<?> consumer) {
+        for (BatchAwareConsumer<?> listener : listeners) {
+            if (listener == consumer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Handler<?>[] resolve(Class<?> clazz) {
+        List<Handler<?>> result = new ArrayList<>();
+        for (Handler<?> handler : registeredHandlers) {
+            if (handler.eventClass.isAssignableFrom(clazz)) {
+                result.add(handler);
+            }
+        }
+        return result.isEmpty() ? NO_HANDLERS : result.toArray(new Handler<?>[0]);
+    }
+
+    //a consumer with the class it was registered for, events reach it only through a class it is assignable to
+    static class Handler<T extends IEvent> {
+        final Class<T> eventClass;
+        final Consumer<? super T> consumer;
+
+        Handler(Class<T> eventClass, Consumer<? super T> consumer) {
+            this.eventClass = eventClass;
+            this.consumer = consumer;
+        }
+
+        void accept(IEvent event) {
+            consumer.accept(eventClass.cast(event));
+        }
+    }
+
+    static class Entry {
+        final Handler<?>[] handlers;
+        //null unless conflation is enabled for the exact class
+        final ConflationStage conflationStage;
+        final int[] batchListenerIds;
+
+        Entry(Handler<?>[] handlers, ConflationStage conflationStage, int[] batchListenerIds) {
+            this.handlers = handlers;
+            this.conflationStage = conflationStage;
+            this.batchListenerIds = batchListenerIds;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.xtrd;
 
+import io.xtrd.journal.EventJournal;
 import io.xtrd.trading.events.IEvent;
 import io.xtrd.trading.events.MarketDataEvent;
 import io.xtrd.trading.events.PriceEvent;
@@ -7,61 +8,542 @@ import io.xtrd.trading.events.TradesEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 
-public class EventProcessor {
+public class EventProcessor implements EventProcessorMXBean {
+    private static final int SPIN_TRIES = 100;
+    private static final int OWN_EVENTS = -1;
+    private static final int OVERFLOW = -2;
+    private static final int DEFAULT_BATCH_SIZE = 64;
     private final Logger logger = LoggerFactory.getLogger(EventProcessor.class);
-    private BlockingQueue<IEvent> queue = new LinkedBlockingQueue<>();
-    private Thread worker;
-    private Map<Class, Consumer> consumers = new HashMap<>();
+    private final int ringSize;
+    private final WaitStrategy waitStrategy;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private final List<DispatchTable.Handler<?>> consumers = new ArrayList<>();
+    private final Map<Class<?>, Lane> laneAssignments = new LinkedHashMap<>();
+    private final Map<Class<?>, ConflationStage> conflationStages = new HashMap<>();
+    private final Map<Class<?>, OverflowPolicy> overflowPolicies = new LinkedHashMap<>();
+    private final Map<Class<?>, Conflator<IEvent>> overflowConflators = new HashMap<>();
+    private final Worker[] workers;
+    //route per event type id, filled lazily and replaced on growth
+    private volatile Route[] routesByType = new Route[16];
+    private volatile boolean started;
+    private volatile boolean latencyTracking;
+    private long latencyLogPeriod;
+    private ScheduledExecutorService latencyLogger;
+    private ObjectName mbeanName;
+    private EventJournal journal;
+    private volatile Clock clock = Clock.SYSTEM;
+
+    public EventProcessor() {
+        this(0, WaitStrategy.BLOCKING, false);
+    }
+
+    public EventProcessor(int ringSize, WaitStrategy waitStrategy) {
+        this(ringSize, waitStrategy, false);
+    }
+
+    /**
+     * @param ringSize     capacity of the preallocated ring for events coming from outside threads, 0 for an unbounded linked queue
+     * @param laneAware    run every {@link Lane} on its own thread, event types are mapped with {@link #assignLane(Class, Lane)}
+     */
+    public EventProcessor(int ringSize, WaitStrategy waitStrategy, boolean laneAware) {
+        this("Event processor", ringSize, waitStrategy, laneAware);
+    }
+
+    //name of the worker thread, lane threads get the lane name appended
+    public EventProcessor(String name, int ringSize, WaitStrategy waitStrategy, boolean laneAware) {
+        this.ringSize = ringSize;
+        this.waitStrategy = waitStrategy;
+        if (laneAware) {
+            workers = new Worker[Lane.values().length];
+            for (Lane lane : Lane.values()) {
+                workers[lane.ordinal()] = new Worker(lane.ordinal(), workers.length, name + " " + lane.name().toLowerCase());
+            }
+        } else {
+            workers = new Worker[]{new Worker(0, 1, name)};
+        }
+    }
 
     public void start() {
-        worker = ThreadHelper.startThread(worker, "Event processor", new Processor(), logger);
+        started = true;
+        compileDispatchTables();
+        for (Worker worker : workers) {
+            worker.thread = ThreadHelper.startThread(worker.thread, worker.name, worker, logger);
+        }
+        if (latencyLogPeriod > 0 && latencyLogger == null) {
+            latencyLogger = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "Event processor latency log");
+                thread.setDaemon(true);
+                return thread;
+            });
+            latencyLogger.scheduleAtFixedRate(this::logLatencies, latencyLogPeriod, latencyLogPeriod, TimeUnit.SECONDS);
+        }
     }
 
     public void stop() {
-        ThreadHelper.stopThread(worker, logger);
+        if (latencyLogger != null) {
+            latencyLogger.shutdownNow();
+            latencyLogger = null;
+        }
+        unregisterMBean();
+        for (Worker worker : workers) {
+            ThreadHelper.stopThread(worker.thread, logger);
+        }
     }
 
     public void clear() {
-        queue.clear();
+        for (Worker worker : workers) {
+            worker.ingress.clear();
+        }
     }
 
     public void putEvent(IEvent event) {
-        queue.add(event);
+        Route route = routeFor(event.getClass());
+        Worker target = route.worker;
+        long timestamp = latencyTracking ? System.nanoTime() : 0;
+        Thread currentThread = Thread.currentThread();
+        if (currentThread == target.thread) {
+            //never wait on our own queue, the worker is the only one who can free a slot
+            target.ownEvents.offer(event, timestamp);
+            return;
+        }
+        Worker source = workerOf(currentThread);
+        if (source != null) {
+            target.handoffs[source.index].offer(event, timestamp);
+        } else {
+            //once the class overflowed its events wait behind the held one, they must not overtake it
+            boolean held = (route.overflowEvent != null || !target.ingress.offer(event, timestamp)) && overflow(route, event, timestamp);
+            //a held event can still be merged or dropped, it is journaled when the worker takes it
+            if (journal != null && !held) {
+                journal.append(event);
+            }
+            target.updateHighWaterMark();
+        }
+        if (target.parked) {
+            LockSupport.unpark(target.thread);
+        }
     }
 
-    public void addConsumer(Class clazz, Consumer consumer) {
-        Consumer consumerForClass = consumers.get(clazz);
-        if (consumerForClass == null) {
-            consumers.put(clazz, consumer);
-        } else {
-            //add consumer to the chain
-            consumers.put(clazz, consumerForClass.andThen(consumer));
+    //true when the event is held in the overflow slot of its class instead of queued
+    private boolean overflow(Route route, IEvent event, long timestamp) {
+        if (!route.overflowLogged) {
+            route.overflowLogged = true;
+            logger.warn("Event queue is full, {} events are handled with {} policy", route.eventClass.getSimpleName(), route.policy);
+        }
+        Worker target = route.worker;
+        int tries = 0;
+        switch (route.policy) {
+            case FAIL_FAST:
+                route.rejectedCount.incrementAndGet();
+                throw new IllegalStateException("Event queue is full, " + route.eventClass.getSimpleName() + " rejected");
+            case KEEP_LATEST:
+            case CONFLATE:
+                while (!route.holdOverflow(event, timestamp)) {
+                    //can't be merged with the held event, wait for the worker to take it and start over
+                    if (route.overflowEvent == null && target.ingress.offer(event, timestamp)) {
+                        return false;
+                    }
+                    tries = backOff(tries);
+                }
+                target.overflowPending = true;
+                return true;
+            default:
+                while (!target.ingress.offer(event, timestamp)) {
+                    //ring is full, wait for the worker to catch up
+                    tries = backOff(tries);
+                }
+                return false;
+        }
+    }
+
+    /**
+     * Maximum number of events a worker drains per wake-up before telling {@link BatchAwareConsumer}s the batch has ended.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public <T extends IEvent> void addConsumer(Class<T> clazz, Consumer<? super T> consumer) {
+        synchronized (consumers) {
+            consumers.add(new DispatchTable.Handler<>(clazz, consumer));
+            if (started) {
+                //registered after start, recompile so the workers pick the consumer up
+                compileDispatchTables();
+            }
+        }
+    }
+
+    /**
+     * Runs events of the given class (and its subclasses, unless they are assigned themselves) on the lane.
+     * Events not assigned to any lane go to {@link Lane#STRATEGY}. Has no effect unless the processor is lane aware.
+     */
+    public void assignLane(Class<? extends IEvent> clazz, Lane lane) {
+        synchronized (laneAssignments) {
+            laneAssignments.put(clazz, lane);
+            routesByType = new Route[routesByType.length];
+        }
+    }
+
+    /**
+     * What a producer outside the processor does when the queue is full, for the class and its subclasses.
+     * Events put by the workers themselves are never subject to it. Default is {@link OverflowPolicy#BLOCK},
+     * must be configured before the processor is started.
+     * <p>
+     * KEEP_LATEST and CONFLATE hold the overflowing events of a class in one slot that the worker takes once its
+     * queues are empty, so the held event is delivered after events of other classes put later. It is journaled
+     * when it is taken, in the order it is delivered. Book and trade deltas must be merged by a conflator.
+     */
+    public <T extends IEvent> void setOverflowPolicy(Class<T> clazz, OverflowPolicy policy) {
+        setOverflowPolicy(clazz, policy, null);
+    }
+
+    //conflator merges held events for the CONFLATE policy, without one the newest event wins and the older is dropped
+    public <T extends IEvent> void setOverflowPolicy(Class<T> clazz, OverflowPolicy policy, Conflator<T> conflator) {
+        boolean deltas = MarketDataEvent.class.isAssignableFrom(clazz) || TradesEvent.class.isAssignableFrom(clazz);
+        //a dropped delta corrupts the book, deltas can only be merged
+        if (deltas && policy == OverflowPolicy.KEEP_LATEST) {
+            throw new IllegalArgumentException(policy + " can't be used for " + clazz.getSimpleName() + ", use " + OverflowPolicy.CONFLATE);
+        }
+        if (deltas && policy == OverflowPolicy.CONFLATE && conflator == null) {
+            throw new IllegalArgumentException(policy + " of " + clazz.getSimpleName() + " needs a conflator");
+        }
+        synchronized (laneAssignments) {
+            overflowPolicies.put(clazz, policy);
+            overflowConflators.put(clazz, conflator == null ? null : (older, newer) -> conflator.conflate(clazz.cast(older), clazz.cast(newer)));
+            routesByType = new Route[routesByType.length];
+        }
+    }
+
+    //events waiting in the queues between threads
+    @Override
+    public int getQueueDepth() {
+        int result = 0;
+        for (Worker worker : workers) {
+            result += worker.ingress.size();
+            for (EventQueue handoff : worker.handoffs) {
+                if (handoff != null) {
+                    result += handoff.size();
+                }
+            }
+        }
+        return result;
+    }
+
+    //highest number of events seen waiting in an ingress queue
+    @Override
+    public int getQueueHighWaterMark() {
+        int result = 0;
+        for (Worker worker : workers) {
+            result = Math.max(result, worker.highWaterMark);
+        }
+        return result;
+    }
+
+    //time source for the consumers, they must never read the system clock themselves
+    public Clock getClock() {
+        return clock;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    //events put from outside threads are the inputs of the bot, they are appended to the journal once accepted
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Stamp events on put and record per event type how long they waited in the queues and how long their
+     * consumers took. Costs two clock reads per event, can be switched at any time.
+     */
+    @Override
+    public void setLatencyTracking(boolean latencyTracking) {
+        this.latencyTracking = latencyTracking;
+    }
+
+    @Override
+    public boolean isLatencyTracking() {
+        return latencyTracking;
+    }
+
+    //dump the latencies to the log every period, 0 to disable, must be configured before start
+    public void setLatencyLogPeriod(long seconds) {
+        this.latencyLogPeriod = seconds;
+    }
+
+    public LatencySnapshot getQueueWaitLatency(Class<? extends IEvent> clazz) {
+        return routeFor(clazz).queueWait.snapshot(clazz.getSimpleName());
+    }
+
+    public LatencySnapshot getHandlerLatency(Class<? extends IEvent> clazz) {
+        return routeFor(clazz).handlerTime.snapshot(clazz.getSimpleName());
+    }
+
+    @Override
+    public List<LatencySnapshot> getQueueWaitLatencies() {
+        List<LatencySnapshot> result = new ArrayList<>();
+        for (Route route : routesByType) {
+            if (route != null && route.queueWait.getTotalCount() > 0) {
+                result.add(route.queueWait.snapshot(route.eventClass.getSimpleName()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<LatencySnapshot> getHandlerLatencies() {
+        List<LatencySnapshot> result = new ArrayList<>();
+        for (Route route : routesByType) {
+            if (route != null && route.handlerTime.getTotalCount() > 0) {
+                result.add(route.handlerTime.snapshot(route.eventClass.getSimpleName()));
+            }
         }
+        return result;
+    }
 
+    public void logLatencies() {
+        for (LatencySnapshot snapshot : getQueueWaitLatencies()) {
+            logger.info("Queue wait {}", snapshot);
+        }
+        for (LatencySnapshot snapshot : getHandlerLatencies()) {
+            logger.info("Handler time {}", snapshot);
+        }
+    }
+
+    //expose the gauges and latencies over JMX until the processor is stopped
+    public void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("io.xtrd:type=EventProcessor,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (Exception e) {
+            logger.warn("Unable to register event processor MBean: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (Exception e) {
+                logger.warn("Unable to unregister event processor MBean: {}", e.getMessage());
+            }
+            mbeanName = null;
+        }
+    }
+
+    public long getRejectedCount(Class<? extends IEvent> clazz) {
+        return routeFor(clazz).rejectedCount.get();
+    }
+
+    public long getDroppedCount(Class<? extends IEvent> clazz) {
+        return routeFor(clazz).droppedCount.get();
+    }
+
+    /**
+     * Lets the worker merge a run of queued events of exactly this class into one before dispatching it.
+     * Events accepted by a guard registered with {@link #addConflationGuard(Class, Predicate)} are never superseded.
+     */
+    public <T extends IEvent> void enableConflation(Class<T> clazz, Conflator<T> conflator) {
+        synchronized (consumers) {
+            getConflationStage(clazz).setConflator((older, newer) -> conflator.conflate(clazz.cast(older), clazz.cast(newer)));
+            if (started) {
+                compileDispatchTables();
+            }
+        }
+    }
+
+    public <T extends IEvent> void addConflationGuard(Class<T> clazz, Predicate<T> mustDeliver) {
+        synchronized (consumers) {
+            getConflationStage(clazz).addGuard(event -> mustDeliver.test(clazz.cast(event)));
+            if (started) {
+                compileDispatchTables();
+            }
+        }
+    }
+
+    public long getConflatedCount(Class<? extends IEvent> clazz) {
+        long overflowConflated = routeFor(clazz).conflatedCount.get();
+        synchronized (consumers) {
+            ConflationStage stage = conflationStages.get(clazz);
+            return overflowConflated + (stage == null ? 0 : stage.getConflatedCount());
+        }
     }
 
-    class Processor implements Runnable {
+    private ConflationStage getConflationStage(Class<?> clazz) {
+        ConflationStage stage = conflationStages.get(clazz);
+        if (stage == null) {
+            stage = new ConflationStage();
+            conflationStages.put(clazz, stage);
+        }
+        return stage;
+    }
+
+    private void compileDispatchTables() {
+        synchronized (consumers) {
+            Map<Class<?>, ConflationStage> enabledStages = new HashMap<>();
+            for (Map.Entry<Class<?>, ConflationStage> entry : conflationStages.entrySet()) {
+                if (entry.getValue().getConflator() != null) {
+                    enabledStages.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Worker worker : workers) {
+                worker.dispatchTable = new DispatchTable(consumers, enabledStages);
+            }
+        }
+    }
+
+    private Route routeFor(Class<? extends IEvent> clazz) {
+        int typeId = DispatchTable.typeId(clazz);
+        Route[] table = routesByType;
+        if (typeId < table.length) {
+            Route route = table[typeId];
+            if (route != null) {
+                return route;
+            }
+        }
+        synchronized (laneAssignments) {
+            Lane lane = workers.length == 1 ? Lane.STRATEGY : lookup(laneAssignments, clazz, Lane.STRATEGY);
+            OverflowPolicy policy = lookup(overflowPolicies, clazz, OverflowPolicy.BLOCK);
+            Conflator<IEvent> conflator = null;
+            for (Map.Entry<Class<?>, Conflator<IEvent>> entry : overflowConflators.entrySet()) {
+                if (entry.getKey().isAssignableFrom(clazz) && overflowPolicies.get(entry.getKey()) == policy) {
+                    conflator = entry.getValue();
+                    break;
+                }
+            }
+            Route route = new Route(clazz, workers.length == 1 ? workers[0] : workers[lane.ordinal()], policy, conflator);
+            route.worker.addRoute(route);
+            table = routesByType;
+            if (typeId >= table.length) {
+                Route[] grown = new Route[Math.max(typeId + 1, table.length * 2)];
+                System.arraycopy(table, 0, grown, 0, table.length);
+                table = grown;
+            } else {
+                table = table.clone();
+            }
+            table[typeId] = route;
+            routesByType = table;
+            return route;
+        }
+    }
+
+    //value of the class itself, or of the first assigned supertype
+    private static <V> V lookup(Map<Class<?>, V> assignments, Class<? extends IEvent> clazz, V defaultValue) {
+        V result = assignments.get(clazz);
+        if (result != null) {
+            return result;
+        }
+        for (Map.Entry<Class<?>, V> assignment : assignments.entrySet()) {
+            if (assignment.getKey().isAssignableFrom(clazz)) {
+                return assignment.getValue();
+            }
+        }
+        return defaultValue;
+    }
+
+    private Worker workerOf(Thread thread) {
+        for (Worker worker : workers) {
+            if (worker.thread == thread) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    private EventQueue createIngressQueue() {
+        return ringSize > 0 ? new RingBufferEventQueue(ringSize) : new LinkedEventQueue();
+    }
+
+    private int backOff(int tries) {
+        if (waitStrategy == WaitStrategy.BUSY_SPIN) {
+            return tries;
+        }
+        if (tries < SPIN_TRIES) {
+            return tries + 1;
+        }
+        if (waitStrategy == WaitStrategy.YIELDING) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(1000L);
+        }
+        return tries;
+    }
+
+    class Worker implements Runnable {
+        private final int index;
+        private final String name;
+        //events from threads that are not workers of this processor
+        private final EventQueue ingress = createIngressQueue();
+        //events from the other lanes, one single producer queue per lane
+        private final EventQueue[] handoffs;
+        //events put by consumers running on this worker, only touched by its thread
+        private final EventQueue ownEvents = new SpscEventQueue();
+        //routes of the event types this worker runs, scanned for held overflow events
+        private volatile Route[] routes = new Route[0];
+        private volatile Thread thread;
+        private volatile boolean parked;
+        private volatile boolean overflowPending;
+        private volatile int highWaterMark;
+        private volatile DispatchTable dispatchTable;
+        private int nextSource;
+        //queue the last event was taken from, OWN_EVENTS for ownEvents
+        private int lastSource;
+        //taken by conflation but not mergeable, goes before anything else
+        private IEvent carriedEvent;
+        private long carriedTimestamp;
+        //put time of the event nextEvent returned
+        private long polledTimestamp;
+        private int idleTries;
+
+        Worker(int index, int workersCount, String name) {
+            this.index = index;
+            this.name = name;
+            handoffs = new EventQueue[workersCount];
+            for (int i = 0; i < handoffs.length; i++) {
+                if (i != index) {
+                    handoffs[i] = new SpscEventQueue();
+                }
+            }
+        }
+
         @Override
         public void run() {
+            //known before the first event, startThread returns only after our consumers may have published
+            thread = Thread.currentThread();
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    IEvent event = queue.take();
-                    Class eventClass = event.getClass();
-                    Consumer consumer = consumers.get(eventClass);
-                    if (consumer != null) {
-                        consumer.accept(event);
-                        if (logger.isDebugEnabled()) {
-                            if (!(eventClass == TradesEvent.class || eventClass == PriceEvent.class || eventClass == MarketDataEvent.class)) {
-                                logger.debug("Event type: {} processed: {}", event.getClass(), event);
-                            }
-                        }
+                    DispatchTable table = dispatchTable;
+                    int processed = 0;
+                    IEvent event;
+                    while (processed < batchSize && (event = nextEvent()) != null) {
+                        processed++;
+                        dispatch(table, event, polledTimestamp);
+                    }
+                    if (processed == 0) {
+                        idle();
+                    } else {
+                        idleTries = 0;
+                        table.endOfBatch(logger);
                     }
                 } catch (InterruptedException e) {
                     logger.debug("Thread {} interrupted, exiting", Thread.currentThread().getName());
@@ -71,5 +553,221 @@ public class EventProcessor {
                 }
             }
         }
+
+        //timestamp is the put time of the event, a conflated event keeps the one of the oldest event merged into it
+        private void dispatch(DispatchTable table, IEvent event, long timestamp) {
+            try {
+                Class<? extends IEvent> eventClass = event.getClass();
+                DispatchTable.Entry entry = table.entryFor(eventClass);
+                if (entry.conflationStage != null) {
+                    event = conflate(entry.conflationStage, event);
+                }
+                DispatchTable.Handler<?>[] handlers = entry.handlers;
+                if (handlers.length != 0) {
+                    table.touched(entry);
+                    long dispatchedAt = timestamp != 0 ? System.nanoTime() : 0;
+                    for (int i = 0; i < handlers.length; i++) {
+                        handlers[i].accept(event);
+                    }
+                    if (dispatchedAt != 0) {
+                        Route route = routeFor(eventClass);
+                        route.queueWait.record(dispatchedAt - timestamp);
+                        route.handlerTime.record(System.nanoTime() - dispatchedAt);
+                    }
+                    if (logger.isDebugEnabled()) {
+                        if (!(eventClass == TradesEvent.class || eventClass == PriceEvent.class || eventClass == MarketDataEvent.class)) {
+                            logger.debug("Event type: {} processed: {}", event.getClass(), event);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+
+        private IEvent nextEvent() {
+            IEvent event = carriedEvent;
+            if (event != null) {
+                carriedEvent = null;
+                polledTimestamp = carriedTimestamp;
+                return event;
+            }
+            event = poll(OWN_EVENTS);
+            if (event != null) {
+                lastSource = OWN_EVENTS;
+                return event;
+            }
+            //take turns between the other lanes and the outside world so none of them starves
+            int sources = handoffs.length + 1;
+            for (int i = 0; i < sources; i++) {
+                int source = nextSource;
+                nextSource = source + 1 == sources ? 0 : source + 1;
+                event = poll(source);
+                if (event != null) {
+                    lastSource = source;
+                    return event;
+                }
+            }
+            event = takeOverflowEvent();
+            if (event != null) {
+                lastSource = OVERFLOW;
+            }
+            return event;
+        }
+
+        void addRoute(Route route) {
+            Route[] result = new Route[routes.length + 1];
+            System.arraycopy(routes, 0, result, 0, routes.length);
+            result[routes.length] = route;
+            routes = result;
+        }
+
+        void updateHighWaterMark() {
+            int depth = ingress.size();
+            if (depth > highWaterMark) {
+                highWaterMark = depth;
+            }
+        }
+
+        //held events are newer than anything queued for their class, so they go last
+        private IEvent takeOverflowEvent() {
+            if (!overflowPending) {
+                return null;
+            }
+            overflowPending = false;
+            for (Route route : routes) {
+                IEvent event = route.takeOverflow();
+                if (event != null) {
+                    overflowPending = true;
+                    polledTimestamp = route.takenTimestamp;
+                    if (journal != null) {
+                        journal.append(event);
+                    }
+                    return event;
+                }
+            }
+            return null;
+        }
+
+        private IEvent poll(int source) {
+            if (source == OVERFLOW) {
+                return null;
+            }
+            EventQueue queue = source == OWN_EVENTS ? ownEvents : source == handoffs.length ? ingress : handoffs[source];
+            if (queue == null) {
+                return null;
+            }
+            IEvent event = queue.poll();
+            if (event != null) {
+                polledTimestamp = queue.polledTimestamp();
+            }
+            return event;
+        }
+
+        //merge the following events of the same source while they are of the same class and nothing must be delivered
+        private IEvent conflate(ConflationStage stage, IEvent event) {
+            Conflator<IEvent> conflator = stage.getConflator();
+            while (!stage.mustDeliver(event)) {
+                IEvent next = poll(lastSource);
+                if (next == null) {
+                    break;
+                }
+                IEvent merged = next.getClass() == event.getClass() ? conflator.conflate(event, next) : null;
+                if (merged == null) {
+                    carriedEvent = next;
+                    carriedTimestamp = polledTimestamp;
+                    break;
+                }
+                stage.conflated();
+                event = merged;
+            }
+            return event;
+        }
+
+        private boolean isEmpty() {
+            if (overflowPending || ingress.size() != 0) {
+                return false;
+            }
+            for (EventQueue handoff : handoffs) {
+                if (handoff != null && handoff.size() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void idle() throws InterruptedException {
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    break;
+                case YIELDING:
+                    if (idleTries++ >= SPIN_TRIES) {
+                        Thread.yield();
+                    }
+                    break;
+                default:
+                    parked = true;
+                    //re-check after publishing the flag, a producer may have missed it
+                    if (isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    static class Route {
+        private final Class<?> eventClass;
+        private final Worker worker;
+        private final OverflowPolicy policy;
+        private final Conflator<IEvent> conflator;
+        private final AtomicLong rejectedCount = new AtomicLong();
+        private final AtomicLong droppedCount = new AtomicLong();
+        private final AtomicLong conflatedCount = new AtomicLong();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram handlerTime = new LatencyHistogram();
+        //newest overflowing event, delivered once the worker has drained its queues
+        private volatile IEvent overflowEvent;
+        //put time of the first event held in the slot
+        private long overflowTimestamp;
+        //put time of the event the worker took last, worker thread only
+        private long takenTimestamp;
+        private volatile boolean overflowLogged;
+
+        Route(Class<?> eventClass, Worker worker, OverflowPolicy policy, Conflator<IEvent> conflator) {
+            this.eventClass = eventClass;
+            this.worker = worker;
+            this.policy = policy;
+            this.conflator = conflator;
+        }
+
+        synchronized boolean holdOverflow(IEvent event, long timestamp) {
+            IEvent held = overflowEvent;
+            if (held == null) {
+                overflowEvent = event;
+                overflowTimestamp = timestamp;
+            } else if (policy == OverflowPolicy.KEEP_LATEST || conflator == null) {
+                overflowEvent = event;
+                droppedCount.incrementAndGet();
+            } else {
+                IEvent merged = conflator.conflate(held, event);
+                if (merged == null) {
+                    return false;
+                }
+                overflowEvent = merged;
+                conflatedCount.incrementAndGet();
+            }
+            return true;
+        }
+
+        synchronized IEvent takeOverflow() {
+            IEvent result = overflowEvent;
+            overflowEvent = null;
+            takenTimestamp = overflowTimestamp;
+            return result;
+        }
     }
 }
@@ -0,0 +1,20 @@
+package io.xtrd;
+
+import java.util.List;
+
+public interface EventProcessorMXBean {
+
+    int getQueueDepth();
+
+    int getQueueHighWaterMark();
+
+    boolean isLatencyTracking();
+
+    void setLatencyTracking(boolean latencyTracking);
+
+    //time from putEvent until the worker dispatched the event, per event type
+    List<LatencySnapshot> getQueueWaitLatencies();
+
+    //time spent in the consumers of the event, per event type
+    List<LatencySnapshot> getHandlerLatencies();
+}
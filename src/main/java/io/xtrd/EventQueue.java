@@ -0,0 +1,22 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+interface EventQueue {
+
+    default boolean offer(IEvent event) {
+        return offer(event, 0);
+    }
+
+    //timestamp is the System.nanoTime the event was put at, 0 when latency is not tracked
+    boolean offer(IEvent event, long timestamp);
+
+    IEvent poll();
+
+    //timestamp of the event returned by the last poll, consumer thread only
+    long polledTimestamp();
+
+    int size();
+
+    void clear();
+}
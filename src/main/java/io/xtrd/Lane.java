@@ -0,0 +1,10 @@
+package io.xtrd;
+
+public enum Lane {
+    //book building and trade to price conversion
+    MARKET_DATA,
+    //renko, OMS and everything that is not assigned explicitly
+    STRATEGY,
+    //FIX sends
+    GATEWAY
+}
@@ -0,0 +1,77 @@
+package io.xtrd;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of nanosecond values with a single writer. Values below 2^SUB_BUCKET_BITS are
+ * counted exactly, every higher power of two is split into 2^(SUB_BUCKET_BITS - 1) buckets, which keeps
+ * the error under 2% in a fixed array. Readers on other threads see counts that are at most a few
+ * records behind.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKETS);
+    private volatile long totalCount;
+    private volatile long max;
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = index(value);
+        counts.lazySet(index, counts.get(index) + 1);
+        if (value > max) {
+            max = value;
+        }
+        totalCount++;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    //highest value of the bucket the percentile falls into, never above the recorded maximum
+    long getValueAtPercentile(double percentile) {
+        long total = totalCount;
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    LatencySnapshot snapshot(String eventType) {
+        return new LatencySnapshot(eventType, totalCount, getValueAtPercentile(50), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), max);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long top = index - shift * HALF_SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
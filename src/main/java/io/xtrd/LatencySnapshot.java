@@ -0,0 +1,55 @@
+package io.xtrd;
+
+import java.util.concurrent.TimeUnit;
+
+//percentiles of one event type, in nanoseconds
+public class LatencySnapshot {
+    private final String eventType;
+    private final long count;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    public LatencySnapshot(String eventType, long count, long p50, long p99, long p999, long max) {
+        this.eventType = eventType;
+        this.count = count;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return eventType + " count: " + count + " p50: " + micros(p50) + " p99: " + micros(p99) + " p99.9: " + micros(p999) + " max: " + micros(max);
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+}
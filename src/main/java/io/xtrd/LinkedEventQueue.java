@@ -0,0 +1,51 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+class LinkedEventQueue implements EventQueue {
+    private final BlockingQueue<Stamped> queue = new LinkedBlockingQueue<>();
+    private long polledTimestamp;
+
+    @Override
+    public boolean offer(IEvent event, long timestamp) {
+        return queue.offer(new Stamped(event, timestamp));
+    }
+
+    @Override
+    public IEvent poll() {
+        Stamped stamped = queue.poll();
+        if (stamped == null) {
+            return null;
+        }
+        polledTimestamp = stamped.timestamp;
+        return stamped.event;
+    }
+
+    @Override
+    public long polledTimestamp() {
+        return polledTimestamp;
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void clear() {
+        queue.clear();
+    }
+
+    private static class Stamped {
+        private final IEvent event;
+        private final long timestamp;
+
+        Stamped(IEvent event, long timestamp) {
+            this.event = event;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package io.xtrd;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializer;
 import com.sun.javafx.webkit.WebConsoleListener;
 import io.xtrd.fix.QuickFIXApplication;
 import io.xtrd.javascript.JSChartBridge;
 import io.xtrd.javascript.JavaBridge;
 import io.xtrd.javascript.Marker;
+import io.xtrd.journal.EventJournal;
 import io.xtrd.trading.*;
 import io.xtrd.trading.events.*;
 import javafx.application.Application;
@@ -34,8 +38,10 @@ import java.io.File;
 import java.io.FileReader;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.function.Consumer;
 
@@ -49,6 +55,7 @@ public class MainApp extends Application {
     private int lastMarkerId;
     private boolean isChartInitialized;
     private EventProcessor eventProcessor;
+    private EventJournal journal;
     private Symbol subscriptionSymbol;
 
 
@@ -83,10 +90,74 @@ public class MainApp extends Application {
         fixApplication.setUserName(config.getProperty(ApiConstants.CONFIG_FIX_SESSION_USERNAME));
         fixApplication.setPassword(config.getProperty(ApiConstants.CONFIG_FIX_SESSION_PASSWORD));
         fixApplication.setFixAccount(config.getProperty(ApiConstants.CONFIG_FIX_SESSION_ACCOUNT_ID));
+        fixApplication.setOrderRateLimits(Integer.parseInt(config.getProperty(ApiConstants.CONFIG_ORDER_RATE_PER_SECOND, "0").trim()),
+                Integer.parseInt(config.getProperty(ApiConstants.CONFIG_ORDER_RATE_PER_WINDOW, "0").trim()),
+                Long.parseLong(config.getProperty(ApiConstants.CONFIG_ORDER_RATE_WINDOW_SECONDS, "0").trim()));
         fixApplication.start(config.getProperty(ApiConstants.CONFIG_FIX_SESSION_CONFIG));
         fixApplication.logon();
     }
 
+    private EventProcessor createEventProcessor() {
+        int ringSize = Integer.parseInt(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_RING_SIZE, "0").trim());
+        WaitStrategy waitStrategy = WaitStrategy.valueOf(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_WAIT_STRATEGY, WaitStrategy.BLOCKING.name()).trim());
+        boolean laneAware = Boolean.parseBoolean(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_LANES, "false").trim());
+        EventProcessor result = new EventProcessor(ringSize, waitStrategy, laneAware);
+        String batchSizeStr = config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_BATCH_SIZE);
+        if (batchSizeStr != null) {
+            result.setBatchSize(Integer.parseInt(batchSizeStr.trim()));
+        }
+        if (laneAware) {
+            //book updates must not delay order acknowledgements
+            result.assignLane(MarketDataEvent.class, Lane.MARKET_DATA);
+            result.assignLane(TradesEvent.class, Lane.MARKET_DATA);
+            result.assignLane(SequenceGapEvent.class, Lane.MARKET_DATA);
+            result.assignLane(OrderCommandEvent.class, Lane.GATEWAY);
+            result.assignLane(OrderMassCancelEvent.class, Lane.GATEWAY);
+            result.assignLane(SubscribeEvent.class, Lane.GATEWAY);
+            result.assignLane(UnsubscribeEvent.class, Lane.GATEWAY);
+            result.assignLane(ResubscribeEvent.class, Lane.GATEWAY);
+            result.assignLane(SecurityListRequestEvent.class, Lane.GATEWAY);
+        }
+        if (Boolean.parseBoolean(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_CONFLATION, "false").trim())) {
+            //under backlog only the latest price and the net book change matter
+            result.enableConflation(PriceEvent.class, (older, newer) -> older.getSymbol() == newer.getSymbol() ? newer : null);
+            result.enableConflation(MarketDataEvent.class, new MarketDataConflator());
+        }
+        OverflowPolicy marketDataPolicy = getOverflowPolicy(ApiConstants.CONFIG_EVENT_PROCESSOR_OVERFLOW_MARKET_DATA);
+        if (marketDataPolicy == OverflowPolicy.KEEP_LATEST) {
+            logger.warn("{} drops book deltas, market data overflow is conflated instead", marketDataPolicy);
+            marketDataPolicy = OverflowPolicy.CONFLATE;
+        }
+        result.setOverflowPolicy(MarketDataEvent.class, marketDataPolicy, new MarketDataConflator());
+        result.setOverflowPolicy(TradesEvent.class, marketDataPolicy, (older, newer) -> {
+            if (older.getSymbol() != newer.getSymbol()) {
+                return null;
+            }
+            List<MarketData> trades = new ArrayList<>(older.getMarketData());
+            trades.addAll(newer.getMarketData());
+            return new TradesEvent(newer.getSymbol(), trades);
+        });
+        result.setOverflowPolicy(ExecutionReport.class, getOverflowPolicy(ApiConstants.CONFIG_EVENT_PROCESSOR_OVERFLOW_ORDERS));
+        OverflowPolicy sessionPolicy = getOverflowPolicy(ApiConstants.CONFIG_EVENT_PROCESSOR_OVERFLOW_SESSION);
+        result.setOverflowPolicy(SessionStatus.class, sessionPolicy);
+        result.setOverflowPolicy(SecurityListEvent.class, sessionPolicy);
+        result.setLatencyTracking(Boolean.parseBoolean(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_LATENCY_TRACKING, "false").trim()));
+        result.setLatencyLogPeriod(Long.parseLong(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_LATENCY_LOG_PERIOD, "0").trim()));
+        result.registerMBean("main");
+        String journalDir = config.getProperty(ApiConstants.CONFIG_JOURNAL_DIR);
+        if (journalDir != null) {
+            String segmentSizeStr = config.getProperty(ApiConstants.CONFIG_JOURNAL_SEGMENT_SIZE);
+            journal = segmentSizeStr == null ? new EventJournal(Paths.get(journalDir.trim()))
+                    : new EventJournal(Paths.get(journalDir.trim()), Integer.parseInt(segmentSizeStr.trim()) * 1024 * 1024);
+            result.setJournal(journal);
+        }
+        return result;
+    }
+
+    private OverflowPolicy getOverflowPolicy(String key) {
+        return OverflowPolicy.valueOf(config.getProperty(key, OverflowPolicy.BLOCK.name()).trim());
+    }
+
     private void stopFixEngine() throws Exception {
         if (fixApplication != null) {
             fixApplication.logout();
@@ -97,8 +168,15 @@ public class MainApp extends Application {
 
     @Override
     public void stop() throws Exception {
+        logger.info("Conflated prices: {}, conflated book updates: {}", eventProcessor.getConflatedCount(PriceEvent.class), eventProcessor.getConflatedCount(MarketDataEvent.class));
+        logger.info("Event queue high water mark: {}, dropped book updates: {}, rejected book updates: {}", eventProcessor.getQueueHighWaterMark(),
+                eventProcessor.getDroppedCount(MarketDataEvent.class), eventProcessor.getRejectedCount(MarketDataEvent.class));
+        eventProcessor.logLatencies();
         stopFixEngine();
         eventProcessor.stop();
+        if (journal != null) {
+            journal.stop();
+        }
         super.stop();
     }
 
@@ -122,7 +200,10 @@ public class MainApp extends Application {
         initWebEngine(webEngine);
         JSChartBridge jsChartBridge = new JSChartBridge(webEngine);
 
-        eventProcessor = new EventProcessor();
+        eventProcessor = createEventProcessor();
+        if (journal != null) {
+            journal.start();
+        }
         eventProcessor.start();
 
         MigPane layout = createLayout(stage, webView, jsChartBridge);
@@ -202,20 +283,11 @@ public class MainApp extends Application {
             }
         });
 
-        Gson gson = new Gson();
-        //chart consume bricks
-        eventProcessor.addConsumer(Brick.class, brick -> Platform.runLater(() -> jsChartBridge.call(JSChartBridge.FunctionName.appendData, gson.toJson(brick))));
-        //chart consume orders
-        eventProcessor.addConsumer(OrderDrawEvent.class, getChartOrdersConsumer(jsChartBridge));
-        //chart consume prices
-        Consumer<PriceEvent> priceConsumer = priceEvent -> Platform.runLater(() -> {
-            if (!isChartInitialized) {
-                isChartInitialized = true;
-                jsChartBridge.call(JSChartBridge.FunctionName.appendData, gson.toJson(new Brick(System.currentTimeMillis() - 1000L, priceEvent.getPrice(), priceEvent.getPrice())));
-            }
-            jsChartBridge.call(JSChartBridge.FunctionName.updatePriceLine, priceEvent.getPrice());
-        });
-        eventProcessor.addConsumer(PriceEvent.class, priceConsumer);
+        //chart consumes bricks, orders and prices, one UI update per processor batch
+        ChartUpdates chartUpdates = new ChartUpdates(jsChartBridge);
+        eventProcessor.addConsumer(BrickBatch.class, chartUpdates);
+        eventProcessor.addConsumer(OrderDrawEvent.class, chartUpdates);
+        eventProcessor.addConsumer(PriceEvent.class, chartUpdates);
         return layout;
     }
 
@@ -246,51 +318,94 @@ public class MainApp extends Application {
     }
 
 
+    private void configureRiskGate(RiskGate riskGate, Symbol symbol) {
+        String maxOrderSize = config.getProperty(ApiConstants.CONFIG_RISK_MAX_ORDER_SIZE);
+        if (maxOrderSize != null) {
+            riskGate.setMaxOrderSize(FixedPoint.parse(maxOrderSize.trim(), symbol.getSizePower()));
+        }
+        String maxNotional = config.getProperty(ApiConstants.CONFIG_RISK_MAX_NOTIONAL);
+        if (maxNotional != null) {
+            riskGate.setMaxNotional(FixedPoint.parse(maxNotional.trim(), symbol.getPricePower() + symbol.getSizePower()));
+        }
+        String maxOpenOrders = config.getProperty(ApiConstants.CONFIG_RISK_MAX_OPEN_ORDERS);
+        if (maxOpenOrders != null) {
+            riskGate.setMaxOpenOrders(Integer.parseInt(maxOpenOrders.trim()));
+        }
+        String priceCollarBps = config.getProperty(ApiConstants.CONFIG_RISK_PRICE_COLLAR_BPS);
+        if (priceCollarBps != null) {
+            riskGate.setPriceCollarBps(Long.parseLong(priceCollarBps.trim()));
+        }
+        String maxPosition = config.getProperty(ApiConstants.CONFIG_RISK_MAX_POSITION);
+        if (maxPosition != null) {
+            riskGate.setMaxPosition(FixedPoint.parse(maxPosition.trim(), symbol.getSizePower()));
+        }
+    }
+
+    private void configureBook(Book book, Symbol symbol) {
+        String depth = config.getProperty(ApiConstants.CONFIG_BOOK_VWAP_DEPTH);
+        if (depth != null) {
+            book.setDepthTicks((int) FixedPoint.parse(depth.trim(), symbol.getPricePower()));
+        }
+        String minPriceChange = config.getProperty(ApiConstants.CONFIG_BOOK_MIN_PRICE_CHANGE);
+        if (minPriceChange != null) {
+            book.setMinPriceChange(FixedPoint.parse(minPriceChange.trim(), symbol.getPricePower()));
+        }
+    }
+
     EventHandler<ActionEvent> getStartButtonHandler(Button startButton, TextField renkoSizeText, TextField orderSizeText, TextField maxPositionHeldText, ComboBox<Symbol> subscriptionComboBox, JSChartBridge jsChartBridge) {
         return e -> {
             startButton.setDisable(true);
             subscriptionSymbol = subscriptionComboBox.getValue();
-            BigDecimal brickSize = new BigDecimal(renkoSizeText.getText());
-            BigDecimal orderSize = new BigDecimal(orderSizeText.getText());
+            RenkoBox box = RenkoBox.valueOf(config.getProperty(ApiConstants.CONFIG_RENKO_BOX, RenkoBox.FIXED.name()).trim());
+            long[] brickSizes = RenkoModel.parseSizes(renkoSizeText.getText(), box.parameterPower(subscriptionSymbol));
+            long orderSize = FixedPoint.parse(orderSizeText.getText().trim(), subscriptionSymbol.getSizePower());
             int maxPositionHeld = Integer.parseInt(maxPositionHeldText.getText());
             jsChartBridge.call(JSChartBridge.FunctionName.changePrecision, subscriptionSymbol.getPricePower());
 
-            new OMS(subscriptionSymbol, brickSize, orderSize, maxPositionHeld, eventProcessor);
-            new RenkoModel(brickSize, eventProcessor);
+            //all series trade one account, the position and the limits are of the symbol
+            PositionEngine positionEngine = new PositionEngine(subscriptionSymbol, eventProcessor);
+            positionEngine.registerMBean(subscriptionSymbol.getName());
+            RiskGate riskGate = new RiskGate(subscriptionSymbol, positionEngine, eventProcessor);
+            configureRiskGate(riskGate, subscriptionSymbol);
+            //an OMS per brick size, the first one is drawn
+            for (int series = 0; series < brickSizes.length; series++) {
+                OMS oms = new OMS(subscriptionSymbol, series, orderSize, maxPositionHeld, eventProcessor);
+                oms.setMassCancel(brickSizes.length == 1);
+                oms.setRiskGate(riskGate);
+            }
+            RenkoModel renkoModel = new RenkoModel(brickSizes, eventProcessor);
+            renkoModel.setBox(box);
+            renkoModel.setReversal(Integer.parseInt(config.getProperty(ApiConstants.CONFIG_RENKO_REVERSAL, "1").trim()));
+            renkoModel.setAtrPeriod(Integer.parseInt(config.getProperty(ApiConstants.CONFIG_RENKO_ATR_BARS, "14").trim()),
+                    Long.parseLong(config.getProperty(ApiConstants.CONFIG_RENKO_ATR_BAR_SECONDS, "60").trim()) * 1000L);
 
             String priceSourceStr = config.getProperty(ApiConstants.CONFIG_PRICE_SOURCE);
             PriceSource priceSource = PriceSource.TRADES;
             if (priceSourceStr != null) {
                 priceSource = PriceSource.valueOf(priceSourceStr);
             }
-            if (priceSource == PriceSource.TRADES) {
-                //take prices from the trades
-                Consumer<TradesEvent> tradesConsumer = event -> {
-                    for (MarketData trade : event.getMarketData()) {
-                        eventProcessor.putEvent(new PriceEvent(trade.getPrice()));
-                    }
-                };
-                eventProcessor.addConsumer(TradesEvent.class, tradesConsumer);
-            } else {
-                //take prices from the top of the book
-                Book book = new Book(eventProcessor);
-                book.setTOBConsumerType(book.getType(priceSource));
+            Book book = priceSource.attach(subscriptionSymbol, eventProcessor, Boolean.parseBoolean(config.getProperty(ApiConstants.CONFIG_BOOK_TOB_PER_BATCH, "false").trim()));
+            if (book != null) {
+                configureBook(book, subscriptionSymbol);
+                book.registerMBean(subscriptionSymbol.getName());
             }
             //subscribe to market data
             eventProcessor.putEvent(new SubscribeEvent(subscriptionSymbol));
         };
     }
 
+    //runs on the UI thread
     Consumer<OrderDrawEvent> getChartOrdersConsumer(JSChartBridge bridge) {
         HashMap<Order, Marker> markers = new HashMap<>();
-        return event -> Platform.runLater(() -> {
+        return event -> {
             Order order = event.getOrder();
+            BigDecimal markerPrice = FixedPoint.toBigDecimal(order.getPrice(), order.getSymbol().getPricePower());
             if (event.getOperation() == OrderOperation.add) {
                 Marker marker;
                 if (order.getSide() == Side.Buy) {
-                    marker = new Marker(lastMarkerId++, order.getPrice(), order.getLinkedLimitBrick().getTime(), order.toJS(), Marker.Type.buyLimit);
+                    marker = new Marker(lastMarkerId++, markerPrice, order.getLinkedLimitBrick().getTime(), order.toJS(), Marker.Type.buyLimit);
                 } else {
-                    marker = new Marker(lastMarkerId++, order.getPrice(), order.getLinkedLimitBrick().getTime(), order.toJS(), Marker.Type.sellLimit);
+                    marker = new Marker(lastMarkerId++, markerPrice, order.getLinkedLimitBrick().getTime(), order.toJS(), Marker.Type.sellLimit);
                 }
                 bridge.call(JSChartBridge.FunctionName.addLabel, marker);
                 markers.put(order, marker);
@@ -306,13 +421,82 @@ public class MainApp extends Application {
                 }
                 long markerTime = order.getLinkedExecBrick() == null ? order.getLinkedLimitBrick().getTime() : order.getLinkedExecBrick().getTime();
                 if (order.getSide() == Side.Buy) {
-                    marker = new Marker(lastMarkerId++, order.getPrice(), markerTime, order.toJS(), Marker.Type.buy);
+                    marker = new Marker(lastMarkerId++, markerPrice, markerTime, order.toJS(), Marker.Type.buy);
                 } else {
-                    marker = new Marker(lastMarkerId++, order.getPrice(), markerTime, order.toJS(), Marker.Type.sell);
+                    marker = new Marker(lastMarkerId++, markerPrice, markerTime, order.toJS(), Marker.Type.sell);
                 }
                 bridge.call(JSChartBridge.FunctionName.addLabel, marker);
                 markers.put(order, marker);
             }
-        });
+        };
+    }
+
+    private class ChartUpdates implements BatchAwareConsumer<IEvent> {
+        //bricks and orders of the first brick size
+        private static final int CHART_SERIES = 0;
+        //bricks are drawn in decimals, with the price power of the subscribed symbol
+        private final Gson gson = new GsonBuilder().registerTypeAdapter(Brick.class, (JsonSerializer<Brick>) (brick, type, context) -> {
+            int pricePower = subscriptionSymbol.getPricePower();
+            JsonObject result = new JsonObject();
+            result.addProperty("time", brick.getTime());
+            result.addProperty("open", FixedPoint.toBigDecimal(brick.getOpen(), pricePower));
+            result.addProperty("high", FixedPoint.toBigDecimal(brick.getHigh(), pricePower));
+            result.addProperty("low", FixedPoint.toBigDecimal(brick.getLow(), pricePower));
+            result.addProperty("close", FixedPoint.toBigDecimal(brick.getClose(), pricePower));
+            return result;
+        }).create();
+        private final JSChartBridge bridge;
+        private final Consumer<OrderDrawEvent> ordersConsumer;
+        private List<Runnable> pendingUpdates = new ArrayList<>();
+        private PriceEvent lastPrice;
+
+        ChartUpdates(JSChartBridge bridge) {
+            this.bridge = bridge;
+            this.ordersConsumer = getChartOrdersConsumer(bridge);
+        }
+
+        @Override
+        public void onEvent(IEvent event) {
+            if (event instanceof BrickBatch) {
+                BrickBatch bricks = (BrickBatch) event;
+                if (bricks.getSeries() != CHART_SERIES) {
+                    return;
+                }
+                for (int i = 0; i < bricks.size(); i++) {
+                    Brick brick = bricks.get(i);
+                    pendingUpdates.add(() -> bridge.call(JSChartBridge.FunctionName.appendData, gson.toJson(brick)));
+                }
+            } else if (event instanceof OrderDrawEvent) {
+                Brick brick = ((OrderDrawEvent) event).getOrder().getLinkedLimitBrick();
+                if (brick != null && brick.getSeries() != CHART_SERIES) {
+                    return;
+                }
+                pendingUpdates.add(() -> ordersConsumer.accept((OrderDrawEvent) event));
+            } else if (event instanceof PriceEvent) {
+                PriceEvent priceEvent = (PriceEvent) event;
+                if (!isChartInitialized) {
+                    isChartInitialized = true;
+                    pendingUpdates.add(() -> bridge.call(JSChartBridge.FunctionName.appendData, gson.toJson(new Brick(priceEvent.getTime() - 1000L, priceEvent.getPrice(), priceEvent.getPrice()))));
+                }
+                //only the latest price of the batch is drawn
+                lastPrice = priceEvent;
+            }
+        }
+
+        @Override
+        public void onEndOfBatch() {
+            List<Runnable> updates = pendingUpdates;
+            PriceEvent price = lastPrice;
+            pendingUpdates = new ArrayList<>();
+            lastPrice = null;
+            Platform.runLater(() -> {
+                for (Runnable update : updates) {
+                    update.run();
+                }
+                if (price != null) {
+                    bridge.call(JSChartBridge.FunctionName.updatePriceLine, FixedPoint.toBigDecimal(price.getPrice(), price.getSymbol().getPricePower()));
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,17 @@
+package io.xtrd;
+
+//what a producer does with an event when the event processor queue is full
+public enum OverflowPolicy {
+    //wait until the worker frees a slot
+    BLOCK,
+    /**
+     * Hold only the latest overflowing event of the class, the earlier overflowing ones are dropped, not the oldest
+     * queued. The held event is delivered after the queues are drained, behind later events of other classes, so
+     * it suits state where the newest value replaces the others. Refused for book and trade deltas.
+     */
+    KEEP_LATEST,
+    //merge overflowing events of the class until the worker catches up
+    CONFLATE,
+    //count the event as rejected and throw to the producer
+    FAIL_FAST
+}
@@ -0,0 +1,108 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer queue over a preallocated ring of slots. Every slot carries the sequence
+ * it is ready for, so producers and the consumer only CAS on their own cursor and never allocate.
+ */
+class RingBufferEventQueue implements EventQueue {
+    private final IEvent[] slots;
+    private final long[] timestamps;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong producerCursor = new AtomicLong();
+    private final AtomicLong consumerCursor = new AtomicLong();
+    private long polledTimestamp;
+
+    RingBufferEventQueue(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two, got " + capacity);
+        }
+        slots = new IEvent[capacity];
+        timestamps = new long[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    @Override
+    public boolean offer(IEvent event, long timestamp) {
+        long position = producerCursor.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerCursor.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = producerCursor.get();
+            } else if (difference < 0) {
+                //slot still holds an event from the previous lap, ring is full
+                return false;
+            } else {
+                position = producerCursor.get();
+            }
+        }
+        slots[index] = event;
+        timestamps[index] = timestamp;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    @Override
+    public IEvent poll() {
+        long position = consumerCursor.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (consumerCursor.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = consumerCursor.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = consumerCursor.get();
+            }
+        }
+        IEvent event = slots[index];
+        slots[index] = null;
+        polledTimestamp = timestamps[index];
+        sequences.lazySet(index, position + mask + 1);
+        return event;
+    }
+
+    @Override
+    public long polledTimestamp() {
+        return polledTimestamp;
+    }
+
+    @Override
+    public int size() {
+        long size = producerCursor.get() - consumerCursor.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, slots.length);
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            //drop
+        }
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+}
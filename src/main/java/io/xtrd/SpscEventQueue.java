@@ -0,0 +1,98 @@
+package io.xtrd;
+
+import io.xtrd.trading.events.IEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Unbounded single-producer/single-consumer queue made of linked array chunks. The consumer hands the
+ * chunk it has finished back to the producer, so in steady state nothing is allocated.
+ */
+class SpscEventQueue implements EventQueue {
+    private static final int CHUNK_SIZE = 1024;
+    private final AtomicReference<Chunk> spareChunk = new AtomicReference<>();
+    private final AtomicLong producedCount = new AtomicLong();
+    private final AtomicLong consumedCount = new AtomicLong();
+    //producer side
+    private Chunk producerChunk;
+    private int producerIndex;
+    private long produced;
+    //consumer side
+    private Chunk consumerChunk;
+    private int consumerIndex;
+    private long consumed;
+    private long polledTimestamp;
+
+    SpscEventQueue() {
+        producerChunk = new Chunk();
+        consumerChunk = producerChunk;
+    }
+
+    @Override
+    public boolean offer(IEvent event, long timestamp) {
+        if (producerIndex == CHUNK_SIZE) {
+            Chunk chunk = spareChunk.getAndSet(null);
+            if (chunk == null) {
+                chunk = new Chunk();
+            }
+            producerChunk.next = chunk;
+            producerChunk = chunk;
+            producerIndex = 0;
+        }
+        //published together with the slot
+        producerChunk.timestamps[producerIndex] = timestamp;
+        producerChunk.slots.lazySet(producerIndex++, event);
+        producedCount.lazySet(++produced);
+        return true;
+    }
+
+    @Override
+    public IEvent poll() {
+        if (consumerIndex == CHUNK_SIZE) {
+            Chunk next = consumerChunk.next;
+            if (next == null) {
+                return null;
+            }
+            Chunk consumedChunk = consumerChunk;
+            consumerChunk = next;
+            consumerIndex = 0;
+            //every slot of the consumed chunk is already cleared
+            consumedChunk.next = null;
+            spareChunk.lazySet(consumedChunk);
+        }
+        IEvent event = consumerChunk.slots.get(consumerIndex);
+        if (event == null) {
+            return null;
+        }
+        polledTimestamp = consumerChunk.timestamps[consumerIndex];
+        consumerChunk.slots.lazySet(consumerIndex++, null);
+        consumedCount.lazySet(++consumed);
+        return event;
+    }
+
+    @Override
+    public long polledTimestamp() {
+        return polledTimestamp;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, producedCount.get() - consumedCount.get());
+    }
+
+    @Override
+    public void clear() {
+        //must be called from the consumer thread
+        while (poll() != null) {
+            //drop
+        }
+    }
+
+    private static class Chunk {
+        private final AtomicReferenceArray<IEvent> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final long[] timestamps = new long[CHUNK_SIZE];
+        private volatile Chunk next;
+    }
+}
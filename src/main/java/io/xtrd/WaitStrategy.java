@@ -0,0 +1,10 @@
+package io.xtrd;
+
+public enum WaitStrategy {
+    //park the worker until a producer wakes it up
+    BLOCKING,
+    //spin for a while, then give the core away with Thread.yield()
+    YIELDING,
+    //never leave the core, lowest latency at the cost of a fully loaded CPU
+    BUSY_SPIN
+}
@@ -0,0 +1,127 @@
+package io.xtrd.fix;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a copy of a QuickFIX data dictionary with only the given messages, and the components and fields they
+ * use. A smaller dictionary loads faster and has less to look up for every field of a message.
+ * Run by the trimmed-dictionary profile: mvn -Ptrimmed-dictionary process-classes
+ */
+public class DictionaryTrimmer {
+    //the session messages, market data, security list and order entry
+    public static final List<String> MESSAGE_TYPES = Arrays.asList(
+            "0", "1", "2", "3", "4", "5", "A", "j",
+            "V", "W", "X", "Y", "x", "y",
+            "D", "F", "G", "q", "r", "8", "9");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: DictionaryTrimmer <source dictionary> <target dictionary> [message types]");
+            System.exit(1);
+        }
+        List<String> messageTypes = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : MESSAGE_TYPES;
+        File target = new File(args[1]);
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+        try (InputStream in = new FileInputStream(args[0]); OutputStream out = new FileOutputStream(target)) {
+            trim(in, out, messageTypes);
+        }
+    }
+
+    public static void trim(InputStream in, OutputStream out, List<String> messageTypes) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        Element root = document.getDocumentElement();
+        for (Element message : children(root, "messages", "message")) {
+            if (!messageTypes.contains(message.getAttribute("msgtype"))) {
+                remove(message);
+            }
+        }
+
+        //components can use other components, keep going until nothing new is found
+        Set<String> fields = new HashSet<>();
+        Set<String> components = new HashSet<>();
+        List<Element> pending = new ArrayList<>();
+        pending.addAll(children(root, "header"));
+        pending.addAll(children(root, "trailer"));
+        pending.addAll(children(root, "messages", "message"));
+        List<Element> allComponents = children(root, "components", "component");
+        while (!pending.isEmpty()) {
+            Element element = pending.remove(pending.size() - 1);
+            NodeList nodes = element.getElementsByTagName("*");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element node = (Element) nodes.item(i);
+                String name = node.getAttribute("name");
+                if ("field".equals(node.getTagName()) || "group".equals(node.getTagName())) {
+                    fields.add(name);
+                } else if ("component".equals(node.getTagName()) && components.add(name)) {
+                    for (Element component : allComponents) {
+                        if (component.getAttribute("name").equals(name)) {
+                            pending.add(component);
+                        }
+                    }
+                }
+            }
+        }
+        for (Element component : allComponents) {
+            if (!components.contains(component.getAttribute("name"))) {
+                remove(component);
+            }
+        }
+        for (Element field : children(root, "fields", "field")) {
+            if (!fields.contains(field.getAttribute("name"))) {
+                remove(field);
+            }
+        }
+
+        //the source indentation is kept as it is
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.transform(new DOMSource(document), new StreamResult(out));
+    }
+
+    //with the indentation before it
+    private static void remove(Element element) {
+        Node previous = element.getPreviousSibling();
+        if (previous != null && previous.getNodeType() == Node.TEXT_NODE && previous.getTextContent().trim().isEmpty()) {
+            element.getParentNode().removeChild(previous);
+        }
+        element.getParentNode().removeChild(element);
+    }
+
+    //the elements at the path below root, in document order
+    private static List<Element> children(Element root, String... path) {
+        List<Element> result = new ArrayList<>();
+        result.add(root);
+        for (String name : path) {
+            List<Element> next = new ArrayList<>();
+            for (Element parent : result) {
+                for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                    if (node instanceof Element && name.equals(node.getNodeName())) {
+                        next.add((Element) node);
+                    }
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,242 @@
+package io.xtrd.fix;
+
+import io.xtrd.ApiConstants;
+import io.xtrd.trading.FixedPoint;
+import quickfix.FieldNotFound;
+import quickfix.Group;
+import quickfix.Message;
+import quickfix.field.*;
+
+import java.util.Arrays;
+
+/**
+ * Decodes the entries of MarketDataSnapshotFullRefresh and MarketDataIncrementalRefresh into reusable arrays,
+ * prices and sizes already scaled by the powers of the subscribed symbol the message is for. The same decoder is
+ * filled either from the QuickFIX groups or by one pass over the raw message text, which skips the Group copies
+ * and the String of every field. The arrays are overwritten by the next message.
+ */
+public class MarketDataDecoder {
+    private static final char SOH = '\u0001';
+    //entry type for what is not a bid, offer or trade
+    public static final char NONE = 0;
+    private char[] entryType = new char[16];
+    private char[] updateAction = new char[16];
+    private long[] price = new long[16];
+    private long[] size = new long[16];
+    private long[] rptSeq = new long[16];
+    private int[] aggressorSide = new int[16];
+    private int count;
+    private char msgType;
+    //RptSeq of a snapshot is at message level, the entries of an incremental refresh have their own
+    private long snapshotRptSeq;
+    private int symbolId;
+
+    //nothing is decoded for a message of no current subscription
+    public void decode(Message message, SubscriptionManager subscriptions) throws FieldNotFound {
+        count = 0;
+        snapshotRptSeq = 0;
+        msgType = message.getHeader().getString(MsgType.FIELD).charAt(0);
+        String symbol = message.getString(Symbol.FIELD);
+        String mdReqId = message.isSetField(MDReqID.FIELD) ? message.getString(MDReqID.FIELD) : "";
+        long requestId = parseRequestId(mdReqId, 0, mdReqId.length());
+        symbolId = subscriptions.resolve(requestId, symbol, 0, symbol.length());
+        if (symbolId == SubscriptionManager.UNKNOWN) {
+            return;
+        }
+        int pricePower = subscriptions.getPricePower(symbolId);
+        int sizePower = subscriptions.getSizePower(symbolId);
+        if (msgType == MsgType.MARKET_DATA_SNAPSHOT_FULL_REFRESH.charAt(0) && message.isSetField(RptSeq.FIELD)) {
+            snapshotRptSeq = message.getInt(RptSeq.FIELD);
+        }
+        int entries = message.getInt(NoMDEntries.FIELD);
+        for (int i = 1; i <= entries; i++) {
+            Group group = message.getGroup(i, NoMDEntries.FIELD);
+            int entry = addEntry();
+            entryType[entry] = group.getChar(MDEntryType.FIELD);
+            if (group.isSetField(MDUpdateAction.FIELD)) {
+                updateAction[entry] = group.getChar(MDUpdateAction.FIELD);
+            }
+            if (group.isSetField(MDEntryPx.FIELD)) {
+                price[entry] = FixedPoint.parse(group.getString(MDEntryPx.FIELD), pricePower);
+            }
+            if (group.isSetField(MDEntrySize.FIELD)) {
+                size[entry] = FixedPoint.parse(group.getString(MDEntrySize.FIELD), sizePower);
+            }
+            if (group.isSetField(RptSeq.FIELD)) {
+                rptSeq[entry] = group.getInt(RptSeq.FIELD);
+            }
+            if (group.isSetField(ApiConstants.TAG_AGGRESSOR_SIDE)) {
+                aggressorSide[entry] = group.getInt(ApiConstants.TAG_AGGRESSOR_SIDE);
+            }
+        }
+    }
+
+    /**
+     * Walks tag=value pairs once. The first field after NoMDEntries opens every entry, the fields up to the next
+     * one belong to it, as in a FIX repeating group.
+     */
+    public void decode(CharSequence raw, SubscriptionManager subscriptions) {
+        count = 0;
+        snapshotRptSeq = 0;
+        msgType = NONE;
+        symbolId = SubscriptionManager.UNKNOWN;
+        long requestId = -1;
+        int symbolStart = 0;
+        int symbolEnd = 0;
+        int pricePower = 0;
+        int sizePower = 0;
+        int delimiter = 0;
+        boolean groupStarted = false;
+        int entry = -1;
+        int length = raw.length();
+        int index = 0;
+        while (index < length) {
+            int tag = 0;
+            char c;
+            while ((c = raw.charAt(index++)) != '=') {
+                if (c < '0' || c > '9') {
+                    throw new IllegalArgumentException("Bad tag at " + (index - 1));
+                }
+                tag = tag * 10 + (c - '0');
+            }
+            int start = index;
+            while (index < length && raw.charAt(index) != SOH) {
+                index++;
+            }
+            int end = index++;
+            if (groupStarted) {
+                delimiter = tag;
+                groupStarted = false;
+            }
+            if (tag == delimiter) {
+                entry = addEntry();
+            }
+            switch (tag) {
+                case MsgType.FIELD:
+                    msgType = raw.charAt(start);
+                    break;
+                case MDReqID.FIELD:
+                    requestId = parseRequestId(raw, start, end);
+                    break;
+                case Symbol.FIELD:
+                    if (entry < 0) {
+                        symbolStart = start;
+                        symbolEnd = end;
+                    }
+                    break;
+                case NoMDEntries.FIELD:
+                    symbolId = subscriptions.resolve(requestId, raw, symbolStart, symbolEnd);
+                    if (symbolId == SubscriptionManager.UNKNOWN) {
+                        return;
+                    }
+                    pricePower = subscriptions.getPricePower(symbolId);
+                    sizePower = subscriptions.getSizePower(symbolId);
+                    groupStarted = true;
+                    break;
+                case MDEntryType.FIELD:
+                    entryType[entry] = raw.charAt(start);
+                    break;
+                case MDUpdateAction.FIELD:
+                    updateAction[entry] = raw.charAt(start);
+                    break;
+                case MDEntryPx.FIELD:
+                    price[entry] = FixedPoint.parse(raw, start, end, pricePower);
+                    break;
+                case MDEntrySize.FIELD:
+                    size[entry] = FixedPoint.parse(raw, start, end, sizePower);
+                    break;
+                case RptSeq.FIELD:
+                    if (msgType == MsgType.MARKET_DATA_SNAPSHOT_FULL_REFRESH.charAt(0)) {
+                        snapshotRptSeq = FixedPoint.parse(raw, start, end, 0);
+                    } else if (entry >= 0) {
+                        rptSeq[entry] = FixedPoint.parse(raw, start, end, 0);
+                    }
+                    break;
+                case ApiConstants.TAG_AGGRESSOR_SIDE:
+                    aggressorSide[entry] = (int) FixedPoint.parse(raw, start, end, 0);
+                    break;
+                case CheckSum.FIELD:
+                    return;
+            }
+        }
+    }
+
+    private int addEntry() {
+        if (count == price.length) {
+            int capacity = count * 2;
+            entryType = Arrays.copyOf(entryType, capacity);
+            updateAction = Arrays.copyOf(updateAction, capacity);
+            price = Arrays.copyOf(price, capacity);
+            size = Arrays.copyOf(size, capacity);
+            rptSeq = Arrays.copyOf(rptSeq, capacity);
+            aggressorSide = Arrays.copyOf(aggressorSide, capacity);
+        }
+        int entry = count++;
+        entryType[entry] = NONE;
+        updateAction[entry] = MDUpdateAction.NEW;
+        price[entry] = 0;
+        size[entry] = 0;
+        rptSeq[entry] = 0;
+        aggressorSide[entry] = 0;
+        return entry;
+    }
+
+    //the MDReqIDs sent by SubscriptionManager are numbers, -1 for any other
+    private static long parseRequestId(CharSequence text, int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    public char getMsgType() {
+        return msgType;
+    }
+
+    //SubscriptionManager id of the symbol, UNKNOWN when the message was not decoded
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public char getEntryType(int entry) {
+        return entryType[entry];
+    }
+
+    public char getUpdateAction(int entry) {
+        return updateAction[entry];
+    }
+
+    public long getPrice(int entry) {
+        return price[entry];
+    }
+
+    public long getSize(int entry) {
+        return size[entry];
+    }
+
+    //0 when the entry has none
+    public long getRptSeq(int entry) {
+        return rptSeq[entry];
+    }
+
+    //0 when the message is not a snapshot or has none
+    public long getSnapshotRptSeq() {
+        return snapshotRptSeq;
+    }
+
+    public int getAggressorSide(int entry) {
+        return aggressorSide[entry];
+    }
+}
@@ -0,0 +1,334 @@
+package io.xtrd.fix;
+
+import io.xtrd.ApiConstants;
+import io.xtrd.BatchAwareConsumer;
+import io.xtrd.EventProcessor;
+import io.xtrd.WaitStrategy;
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.FixedPoint;
+import io.xtrd.trading.Order;
+import io.xtrd.trading.OrderOperation;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.OrderCommandEvent;
+import io.xtrd.trading.events.OrderMassCancelEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickfix.Message;
+import quickfix.Session;
+import quickfix.field.*;
+import quickfix.fix44.NewOrderSingle;
+import quickfix.fix44.OrderCancelReplaceRequest;
+import quickfix.fix44.OrderCancelRequest;
+import quickfix.fix44.OrderMassCancelRequest;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends order commands on its own thread, so a slow socket or message store write doesn't hold the event processor.
+ * Commands are handed over through the ring of a single worker {@link EventProcessor}. The trading session is
+ * resolved at logon and the messages are templates with the constant fields set once, only the fields of the
+ * order are replaced before each send. Templates are touched by the gateway thread only.
+ * <p>
+ * Commands wait in the gateway while the message budgets of the venue are spent, cancels are sent before new
+ * orders and replaces. A waiting order that is canceled or mass canceled is not sent at all, it goes back to OMS
+ * as a REJECTED execution report. A timer wakes the gateway when the next message can go.
+ */
+public class OrderGateway implements OrderGatewayMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(OrderGateway.class);
+    private static final int RING_SIZE = 1 << 10;
+    private static final Drain DRAIN = new Drain();
+    private final EventProcessor eventProcessor;
+    private final EventProcessor sender;
+    private final OrderRateLimiter rateLimiter = new OrderRateLimiter();
+    private final ArrayDeque<IEvent> cancels = new ArrayDeque<>();
+    private final ArrayDeque<OrderCommandEvent> orders = new ArrayDeque<>();
+    private final ScheduledExecutorService timer;
+    private boolean drainScheduled;
+    private ObjectName mbeanName;
+    private volatile long sent;
+    private volatile long throttleEpisodes;
+    private volatile long dropped;
+    private volatile int queued;
+    private final NewOrderSingle newOrderSingle = new NewOrderSingle();
+    private final OrderCancelRequest orderCancelRequest = new OrderCancelRequest();
+    private final OrderCancelReplaceRequest orderCancelReplaceRequest = new OrderCancelReplaceRequest();
+    private final OrderMassCancelRequest orderMassCancelRequest = new OrderMassCancelRequest();
+    private volatile Session session;
+
+    public OrderGateway(EventProcessor eventProcessor) {
+        this(eventProcessor, WaitStrategy.BLOCKING);
+    }
+
+    public OrderGateway(EventProcessor eventProcessor, WaitStrategy waitStrategy) {
+        this.eventProcessor = eventProcessor;
+        sender = new EventProcessor("Order gateway", RING_SIZE, waitStrategy, false);
+        Commands commands = new Commands();
+        sender.addConsumer(OrderCommandEvent.class, commands);
+        sender.addConsumer(OrderMassCancelEvent.class, commands);
+        sender.addConsumer(Drain.class, commands);
+        eventProcessor.addConsumer(OrderCommandEvent.class, (Consumer<OrderCommandEvent>) sender::putEvent);
+        eventProcessor.addConsumer(OrderMassCancelEvent.class, (Consumer<OrderMassCancelEvent>) sender::putEvent);
+        newOrderSingle.set(new OrdType(OrdType.LIMIT));
+        newOrderSingle.set(new TimeInForce(TimeInForce.GOOD_TILL_CANCEL));
+        newOrderSingle.set(new ExDestination(ApiConstants.EXCHANGE));
+        newOrderSingle.set(new SecurityType(ApiConstants.CRYPTOSPOT));
+        orderCancelReplaceRequest.set(new OrdType(OrdType.LIMIT));
+        orderCancelReplaceRequest.set(new TimeInForce(TimeInForce.GOOD_TILL_CANCEL));
+        orderCancelReplaceRequest.set(new ExDestination(ApiConstants.EXCHANGE));
+        orderCancelReplaceRequest.set(new SecurityType(ApiConstants.CRYPTOSPOT));
+        orderMassCancelRequest.set(new MassCancelRequestType(MassCancelRequestType.CANCEL_ORDERS_FOR_A_SECURITY));
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "Order gateway timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setAccount(String account) {
+        newOrderSingle.set(new Account(account));
+        orderCancelRequest.set(new Account(account));
+        orderCancelReplaceRequest.set(new Account(account));
+    }
+
+    //messages per second and per window of the given seconds, 0 is not limited, set before start
+    public void setRateLimits(int perSecond, int perWindow, long windowSeconds) {
+        rateLimiter.setLimits(perSecond, perWindow, windowSeconds);
+    }
+
+    public void start() {
+        sender.start();
+        try {
+            ObjectName objectName = new ObjectName("io.xtrd:type=OrderGateway");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (Exception e) {
+            logger.warn("Unable to register order gateway MBean: {}", e.getMessage());
+        }
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+        sender.stop();
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (Exception e) {
+                logger.warn("Unable to unregister order gateway MBean: {}", e.getMessage());
+            }
+            mbeanName = null;
+        }
+    }
+
+    //the trading session after logon, null after logout
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    void enqueue(OrderCommandEvent event) {
+        if (event.getOperation() == OrderOperation.delete) {
+            if (!drop(event.getOrder(), "canceled before sent")) {
+                cancels.addLast(event);
+            }
+        } else {
+            orders.addLast(event);
+        }
+        queued = cancels.size() + orders.size();
+    }
+
+    void enqueue(OrderMassCancelEvent event) {
+        for (Iterator<OrderCommandEvent> iterator = orders.iterator(); iterator.hasNext(); ) {
+            Order order = iterator.next().getOrder();
+            if (order.getSide() == event.getSide() && order.getSymbol().getName().equals(event.getSymbol().getName())) {
+                iterator.remove();
+                reject(order, "mass canceled before sent");
+            }
+        }
+        cancels.addLast(event);
+        queued = cancels.size() + orders.size();
+    }
+
+    /**
+     * Sends what the budgets allow, cancels first. Time is the clock of the event processor, so the budgets follow
+     * the recorded time on replay, the timer rounds the wait up to the next millisecond of it. Without a trading
+     * session nothing is spent, new orders and replaces go back to OMS as rejected.
+     */
+    void drain() {
+        Session session = this.session;
+        long now = TimeUnit.MILLISECONDS.toNanos(eventProcessor.getClock().currentTimeMillis());
+        while (!cancels.isEmpty() || !orders.isEmpty()) {
+            if (session != null && !rateLimiter.tryAcquire(now)) {
+                if (!drainScheduled) {
+                    throttleEpisodes++;
+                    drainScheduled = true;
+                    long wait = TimeUnit.NANOSECONDS.toMillis(rateLimiter.nanosUntilAvailable(now) + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+                    timer.schedule(() -> sender.putEvent(DRAIN), wait, TimeUnit.MILLISECONDS);
+                }
+                break;
+            }
+            IEvent command = cancels.isEmpty() ? orders.pollFirst() : cancels.pollFirst();
+            if (session != null) {
+                send(session, command);
+                sent++;
+            } else if (command instanceof OrderCommandEvent && ((OrderCommandEvent) command).getOperation() != OrderOperation.delete) {
+                reject(((OrderCommandEvent) command).getOrder(), "trading session not logged on");
+            } else {
+                logger.error("Trading session is not logged on, {} is not sent", command);
+            }
+        }
+        queued = cancels.size() + orders.size();
+    }
+
+    //false when the order is not waiting
+    private boolean drop(Order order, String reason) {
+        for (Iterator<OrderCommandEvent> iterator = orders.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getOrder() == order) {
+                iterator.remove();
+                reject(order, reason);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reject(Order order, String reason) {
+        dropped++;
+        logger.info("Order {} dropped: {}", order.getClOrdID(), reason);
+        eventProcessor.putEvent(ExecutionReport.builder()
+                .setOrderId(order.getOrderID())
+                .setClOrdID(order.getClOrdID())
+                .setSymbol(order.getSymbol().getName())
+                .setSide(order.getSide())
+                .setOrderStatus(ExecutionReport.OrderStatus.REJECTED)
+                .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
+                .setText(reason)
+                .build());
+    }
+
+    private void send(Session session, IEvent command) {
+        Message message;
+        if (command instanceof OrderMassCancelEvent) {
+            message = orderMassCancelRequest((OrderMassCancelEvent) command);
+        } else {
+            OrderCommandEvent event = (OrderCommandEvent) command;
+            if (event.getOperation() == OrderOperation.add) {
+                message = newOrderSingle(event.getOrder());
+            } else if (event.getOperation() == OrderOperation.delete) {
+                message = orderCancelRequest(event.getOrder());
+            } else if (event.getOperation() == OrderOperation.replace) {
+                message = orderCancelReplaceRequest(event.getOrder());
+            } else {
+                return;
+            }
+        }
+        try {
+            session.send(message);
+        } catch (Exception e) {
+            logger.error("An error occurred during {}", command, e);
+        }
+    }
+
+    Message newOrderSingle(Order order) {
+        newOrderSingle.set(new ClOrdID(order.getClOrdID()));
+        newOrderSingle.set(side(order));
+        newOrderSingle.set(new TransactTime(LocalDateTime.now(ZoneOffset.UTC)));
+        newOrderSingle.set(new Symbol(order.getSymbol().getName()));
+        //decimals only in the message
+        newOrderSingle.setString(OrderQty.FIELD, FixedPoint.toString(order.getSize(), order.getSymbol().getSizePower()));
+        newOrderSingle.setString(Price.FIELD, FixedPoint.toString(order.getPrice(), order.getSymbol().getPricePower()));
+        return newOrderSingle;
+    }
+
+    Message orderCancelRequest(Order order) {
+        orderCancelRequest.set(new OrigClOrdID(order.getClOrdID()));
+        orderCancelRequest.set(new ClOrdID("D".concat(order.getClOrdID())));
+        orderCancelRequest.set(side(order));
+        orderCancelRequest.set(new TransactTime(LocalDateTime.now(ZoneOffset.UTC)));
+        orderCancelRequest.set(new Symbol(order.getSymbol().getName()));
+        if (order.getOrderID() != null) {
+            orderCancelRequest.set(new OrderID(order.getOrderID()));
+        } else {
+            orderCancelRequest.removeField(OrderID.FIELD);
+        }
+        return orderCancelRequest;
+    }
+
+    Message orderCancelReplaceRequest(Order order) {
+        orderCancelReplaceRequest.set(new OrigClOrdID(order.getOrigClOrdID()));
+        orderCancelReplaceRequest.set(new ClOrdID(order.getClOrdID()));
+        orderCancelReplaceRequest.set(side(order));
+        orderCancelReplaceRequest.set(new TransactTime(LocalDateTime.now(ZoneOffset.UTC)));
+        orderCancelReplaceRequest.set(new Symbol(order.getSymbol().getName()));
+        orderCancelReplaceRequest.set(new OrderID(order.getOrderID()));
+        orderCancelReplaceRequest.setString(OrderQty.FIELD, FixedPoint.toString(order.getSize(), order.getSymbol().getSizePower()));
+        orderCancelReplaceRequest.setString(Price.FIELD, FixedPoint.toString(order.getPrice(), order.getSymbol().getPricePower()));
+        return orderCancelReplaceRequest;
+    }
+
+    Message orderMassCancelRequest(OrderMassCancelEvent event) {
+        orderMassCancelRequest.set(new ClOrdID(event.getClOrdID()));
+        orderMassCancelRequest.set(side(event.getSide()));
+        orderMassCancelRequest.set(new TransactTime(LocalDateTime.now(ZoneOffset.UTC)));
+        orderMassCancelRequest.set(new Symbol(event.getSymbol().getName()));
+        return orderMassCancelRequest;
+    }
+
+    @Override
+    public long getSent() {
+        return sent;
+    }
+
+    @Override
+    public long getThrottleEpisodes() {
+        return throttleEpisodes;
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public int getQueued() {
+        return queued;
+    }
+
+    private static Side side(Order order) {
+        return side(order.getSide());
+    }
+
+    private static Side side(io.xtrd.trading.Side side) {
+        return new Side(side == io.xtrd.trading.Side.Buy ? Side.BUY : Side.SELL);
+    }
+
+    private class Commands implements BatchAwareConsumer<IEvent> {
+
+        @Override
+        public void onEvent(IEvent event) {
+            if (event instanceof OrderCommandEvent) {
+                enqueue((OrderCommandEvent) event);
+            } else if (event instanceof OrderMassCancelEvent) {
+                enqueue((OrderMassCancelEvent) event);
+            } else {
+                drainScheduled = false;
+            }
+        }
+
+        @Override
+        public void onEndOfBatch() {
+            drain();
+        }
+    }
+
+    //wakes the gateway when the budgets have a message again
+    private static class Drain implements IEvent {
+    }
+}
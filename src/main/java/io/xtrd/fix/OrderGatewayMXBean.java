@@ -0,0 +1,14 @@
+package io.xtrd.fix;
+
+public interface OrderGatewayMXBean {
+
+    long getSent();
+
+    //times the gateway had to wait for the message budgets, however many commands waited
+    long getThrottleEpisodes();
+
+    //new orders and replaces answered with a reject instead of being sent
+    long getDropped();
+
+    int getQueued();
+}
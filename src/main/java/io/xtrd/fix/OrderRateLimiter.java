@@ -0,0 +1,62 @@
+package io.xtrd.fix;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message budgets of the venue, one per second and one per longer window, each a token bucket that is full at
+ * start and refills evenly. Buckets are kept as the time they are next full minus their burst, so taking a token
+ * is a compare and an add on a long. A budget of 0 is not limited. Used by the gateway thread only.
+ */
+class OrderRateLimiter {
+    private final Bucket second = new Bucket();
+    private final Bucket window = new Bucket();
+
+    void setLimits(int perSecond, int perWindow, long windowSeconds) {
+        second.set(perSecond, TimeUnit.SECONDS.toNanos(1));
+        window.set(perWindow, TimeUnit.SECONDS.toNanos(windowSeconds));
+    }
+
+    boolean tryAcquire(long now) {
+        if (second.waitTime(now) > 0 || window.waitTime(now) > 0) {
+            return false;
+        }
+        second.take(now);
+        window.take(now);
+        return true;
+    }
+
+    //0 when a message can be sent now
+    long nanosUntilAvailable(long now) {
+        return Math.max(second.waitTime(now), window.waitTime(now));
+    }
+
+    private static class Bucket {
+        //nanos per token and nanos of a full bucket less one token
+        private long interval;
+        private long burst;
+        private long fullAt;
+        private boolean started;
+
+        void set(int budget, long periodNanos) {
+            interval = budget > 0 && periodNanos > 0 ? periodNanos / budget : 0;
+            burst = interval * Math.max(budget - 1, 0);
+            started = false;
+        }
+
+        long waitTime(long now) {
+            if (interval == 0 || !started) {
+                return 0;
+            }
+            return Math.max(fullAt - burst - now, 0);
+        }
+
+        void take(long now) {
+            if (interval == 0) {
+                return;
+            }
+            //nanoTime can be negative, the first message starts the bucket
+            fullAt = (started ? Math.max(fullAt, now) : now) + interval;
+            started = true;
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package io.xtrd.fix;
 
 import io.xtrd.ApiConstants;
+import io.xtrd.BatchAwareConsumer;
 import io.xtrd.EventProcessor;
 import io.xtrd.trading.MarketData;
-import io.xtrd.trading.Order;
-import io.xtrd.trading.OrderOperation;
 import io.xtrd.trading.events.SessionStatus;
 import io.xtrd.trading.events.*;
 import org.slf4j.Logger;
@@ -19,6 +18,8 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
@@ -28,20 +29,22 @@ public class QuickFIXApplication implements Application {
     private final MessagesFactory messagesFactory = new MessagesFactory();
     private String userName;
     private String password;
-    private String fixAccount;
     private SocketInitiator initiator;
+    private SessionSettings sessionSettings;
+    //sessions with MarketDataDecoder=RAW
+    private final Set<SessionID> rawDecoderSessions = ConcurrentHashMap.newKeySet();
+    private final MarketDataDecoder marketDataDecoder = new MarketDataDecoder();
     private List<io.xtrd.trading.Symbol> securityList = new ArrayList<>();
     private EventProcessor eventProcessor;
-    private io.xtrd.trading.Symbol subscribedSymbol;
+    private final SubscriptionManager subscriptions = new SubscriptionManager();
+    //null with the sand box executor
+    private OrderGateway orderGateway;
 
     public QuickFIXApplication(EventProcessor eventProcessor) {
         this.eventProcessor = eventProcessor;
-        eventProcessor.addConsumer(OrderCommandEvent.class, getOrderConsumer());
+        orderGateway = new OrderGateway(eventProcessor);
         eventProcessor.addConsumer(SecurityListRequestEvent.class, request -> getSecurityList());
-        eventProcessor.addConsumer(SubscribeEvent.class, (Consumer<SubscribeEvent>) event -> {
-            subscribedSymbol = event.getSymbol();
-            subscribe(event.getSymbol().getName());
-        });
+        addSubscriptionConsumers();
     }
 
     public QuickFIXApplication(EventProcessor eventProcessor, boolean useSandBoxExecutor) {
@@ -51,34 +54,48 @@ public class QuickFIXApplication implements Application {
             SandBoxOrderExecutor sandBoxOrderExecutor = new SandBoxOrderExecutor(eventProcessor);
         } else {
             //start real executor
-            eventProcessor.addConsumer(OrderCommandEvent.class, getOrderConsumer());
+            orderGateway = new OrderGateway(eventProcessor);
         }
 
         eventProcessor.addConsumer(SecurityListRequestEvent.class, request -> getSecurityList());
-        eventProcessor.addConsumer(SubscribeEvent.class, (Consumer<SubscribeEvent>) event -> {
-            subscribedSymbol = event.getSymbol();
-            subscribe(event.getSymbol().getName());
-        });
+        addSubscriptionConsumers();
     }
 
-    private Consumer<OrderCommandEvent> getOrderConsumer() {
-        return event -> {
-            if (event.getOperation() == OrderOperation.add) {
-                newOrder(event.getOrder());
-            } else if (event.getOperation() == OrderOperation.delete) {
-                cancelOrder(event.getOrder());
+    //requests of a batch are sent together at its end
+    private void addSubscriptionConsumers() {
+        eventProcessor.addConsumer(SubscribeEvent.class, subscriptionRequest((SubscribeEvent event) -> subscriptions.subscribe(event.getSymbol())));
+        eventProcessor.addConsumer(UnsubscribeEvent.class, subscriptionRequest((UnsubscribeEvent event) -> subscriptions.unsubscribe(event.getSymbol())));
+        eventProcessor.addConsumer(ResubscribeEvent.class, subscriptionRequest((ResubscribeEvent event) -> subscriptions.resubscribe(event.getSymbol())));
+    }
+
+    private <T extends IEvent> BatchAwareConsumer<T> subscriptionRequest(Consumer<T> request) {
+        return new BatchAwareConsumer<T>() {
+            @Override
+            public void onEvent(T event) {
+                request.accept(event);
+            }
+
+            @Override
+            public void onEndOfBatch() {
+                sendSubscriptionRequests();
             }
         };
     }
 
     public void start(String settingsFileName) throws ConfigError {
-        SessionSettings sessionSettings = new SessionSettings(settingsFileName);
+        sessionSettings = new SessionSettings(settingsFileName);
         FileStoreFactory fileStoreFactory = new FileStoreFactory(sessionSettings);
         initiator = new SocketInitiator(this, fileStoreFactory, sessionSettings, new DefaultMessageFactory());
+        if (orderGateway != null) {
+            orderGateway.start();
+        }
         initiator.start();
     }
 
     public void stop() {
+        if (orderGateway != null) {
+            orderGateway.stop();
+        }
         initiator.stop();
     }
 
@@ -114,11 +131,27 @@ public class QuickFIXApplication implements Application {
     }
 
     public void setFixAccount(String fixAccount) {
-        this.fixAccount = fixAccount;
+        if (orderGateway != null) {
+            orderGateway.setAccount(fixAccount);
+        }
+    }
+
+    public void setOrderRateLimits(int perSecond, int perWindow, long windowSeconds) {
+        if (orderGateway != null) {
+            orderGateway.setRateLimits(perSecond, perWindow, windowSeconds);
+        }
     }
 
     @Override
     public void onCreate(SessionID sessionID) {
+        try {
+            if (sessionSettings != null && sessionSettings.isSetting(sessionID, ApiConstants.SESSION_MARKET_DATA_DECODER)
+                    && ApiConstants.MARKET_DATA_DECODER_RAW.equalsIgnoreCase(sessionSettings.getString(sessionID, ApiConstants.SESSION_MARKET_DATA_DECODER))) {
+                rawDecoderSessions.add(sessionID);
+            }
+        } catch (ConfigError e) {
+            logger.error("Session: {} has a bad {} setting", sessionID, ApiConstants.SESSION_MARKET_DATA_DECODER, e);
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("Created new Session: [" + sessionID + "]");
         }
@@ -128,6 +161,8 @@ public class QuickFIXApplication implements Application {
     public void onLogon(SessionID sessionID) {
         if (!sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
             eventProcessor.putEvent(SessionStatus.CONNECTED);
+        } else if (orderGateway != null) {
+            orderGateway.setSession(Session.lookupSession(sessionID));
         }
         if (logger.isDebugEnabled()) {
             logger.debug("Session: {} is connected!", sessionID);
@@ -138,6 +173,8 @@ public class QuickFIXApplication implements Application {
     public void onLogout(SessionID sessionID) {
         if (!sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
             eventProcessor.putEvent(SessionStatus.DISCONNECTED);
+        } else if (orderGateway != null) {
+            orderGateway.setSession(null);
         }
         if (logger.isDebugEnabled()) {
             logger.debug("Session: {} is disconnected!", sessionID);
@@ -176,7 +213,7 @@ public class QuickFIXApplication implements Application {
 
     @Override
     public void fromApp(Message message, SessionID sessionID) {
-        processMessage(message);
+        processMessage(message, sessionID);
         if (sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Session: {} received application Message: {}", sessionID, message);
@@ -184,37 +221,76 @@ public class QuickFIXApplication implements Application {
         }
     }
 
-    private void processMessage(Message message) {
-        StringField msgTypeField = new StringField(MsgType.FIELD);
+    private void processMessage(Message message, SessionID sessionID) {
         try {
-            String typeFieldValue = message.getHeader().getField(msgTypeField).getValue();
+            String typeFieldValue = message.getHeader().getString(MsgType.FIELD);
             if (SecurityList.MSGTYPE.equals(typeFieldValue)) {
                 processSecurityList(message);
             } else if (MarketDataSnapshotFullRefresh.MSGTYPE.equals(typeFieldValue)) {
-                processSnapshotFullRefresh(message);
+                decodeMarketData(message, sessionID);
+                processSnapshotFullRefresh();
             } else if (MarketDataIncrementalRefresh.MSGTYPE.equals(typeFieldValue)) {
-                processIncrementalRefresh(message);
+                decodeMarketData(message, sessionID);
+                processIncrementalRefresh();
             } else if (OrderCancelReject.MSGTYPE.equals(typeFieldValue)) {
                 processOrderCancelReject(message);
+            } else if (OrderMassCancelReport.MSGTYPE.equals(typeFieldValue)) {
+                processOrderMassCancelReport(message);
             } else if (ExecutionReport.MSGTYPE.equals(typeFieldValue)) {
                 processExecutionReport(message);
             }
         } catch (FieldNotFound e) {
-            logger.error("Message {}, field {} not found", message, msgTypeField, e);
+            logger.error("Message {}, field {} not found", message, e.field, e);
         }
     }
 
+    private void decodeMarketData(Message message, SessionID sessionID) throws FieldNotFound {
+        String raw = rawDecoderSessions.contains(sessionID) ? message.toRawString() : null;
+        if (raw != null) {
+            marketDataDecoder.decode(raw, subscriptions);
+        } else {
+            marketDataDecoder.decode(message, subscriptions);
+        }
+    }
 
+
+    //a rejected replace leaves the original order working, the replacement is rejected
     private void processOrderCancelReject(Message message) throws FieldNotFound {
+        if (message.getChar(CxlRejResponseTo.FIELD) != CxlRejResponseTo.ORDER_CANCEL_REPLACE_REQUEST) {
+            return;
+        }
+        io.xtrd.trading.ExecutionReport executionReport = io.xtrd.trading.ExecutionReport
+                .builder()
+                .setOrderId(message.isSetField(OrderID.FIELD) ? message.getString(OrderID.FIELD) : null)
+                .setClOrdID(message.getString(ClOrdID.FIELD))
+                .setOrderStatus(io.xtrd.trading.ExecutionReport.OrderStatus.REJECTED)
+                .setLastQty(BigDecimal.ZERO)
+                .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
+                .setText(message.isSetField(Text.FIELD) ? message.getString(Text.FIELD) : null)
+                .build();
+        eventProcessor.putEvent(executionReport);
+    }
 
+    //the canceled orders come as execution reports of their own
+    private void processOrderMassCancelReport(Message message) throws FieldNotFound {
+        if (message.getChar(MassCancelResponse.FIELD) == MassCancelResponse.CANCEL_REQUEST_REJECTED_SEE_MASSCANCELREJECTREASON) {
+            logger.error("Mass cancel {} rejected, reason {}", message.isSetField(ClOrdID.FIELD) ? message.getString(ClOrdID.FIELD) : null,
+                    message.isSetField(MassCancelRejectReason.FIELD) ? message.getString(MassCancelRejectReason.FIELD) : null);
+        }
     }
 
     private void processExecutionReport(Message message) throws FieldNotFound {
         String orderId = message.getString(OrderID.FIELD);
-        //for cancel operation clOrdID can be found in OrigClOrdID
-        String clOrdID = message.isSetField(OrigClOrdID.FIELD) ? message.getString(OrigClOrdID.FIELD) : message.getString(ClOrdID.FIELD);
-        char orderStatus = message.getChar(OrdStatus.FIELD);
+        //a cancel is reported for the ClOrdID of the cancel request, the order is in OrigClOrdID. Fills of a replaced
+        //order can echo the OrigClOrdID of the replace, they are for the new ClOrdID
+        char execType = message.isSetField(ExecType.FIELD) ? message.getChar(ExecType.FIELD) : 0;
+        boolean replaced = execType == ExecType.REPLACED;
+        boolean canceled = execType == ExecType.CANCELED || execType == ExecType.PENDING_CANCEL;
+        String clOrdID = canceled && message.isSetField(OrigClOrdID.FIELD) ? message.getString(OrigClOrdID.FIELD) : message.getString(ClOrdID.FIELD);
+        char orderStatus = replaced ? OrdStatus.REPLACED : message.getChar(OrdStatus.FIELD);
         BigDecimal lastQty = message.isSetField(LastQty.FIELD) ? new BigDecimal(message.getString(LastQty.FIELD)) : BigDecimal.ZERO;
+        BigDecimal lastPx = message.isSetField(LastPx.FIELD) ? new BigDecimal(message.getString(LastPx.FIELD)) : null;
+        BigDecimal commission = message.isSetField(Commission.FIELD) ? new BigDecimal(message.getString(Commission.FIELD)) : null;
         BigDecimal cumQty = new BigDecimal(message.getString(CumQty.FIELD));
         BigDecimal leavesQty = new BigDecimal(message.getString(LeavesQty.FIELD));
         long transactionTime = message.getUtcTimeStamp(TransactTime.FIELD).toInstant(ZoneOffset.ofTotalSeconds(0)).toEpochMilli();
@@ -224,8 +300,12 @@ public class QuickFIXApplication implements Application {
                 .builder()
                 .setOrderId(orderId)
                 .setClOrdID(clOrdID)
+                .setSymbol(message.getString(Symbol.FIELD))
+                .setSide(message.getChar(Side.FIELD) == Side.BUY ? io.xtrd.trading.Side.Buy : io.xtrd.trading.Side.Sell)
                 .setOrderStatus(io.xtrd.trading.ExecutionReport.OrderStatus.fromChar(orderStatus))
                 .setLastQty(lastQty)
+                .setLastPx(lastPx)
+                .setCommission(commission)
                 .setCumQty(cumQty)
                 .setLeavesQty(leavesQty)
                 .setTransactionTime(transactionTime)
@@ -235,43 +315,54 @@ public class QuickFIXApplication implements Application {
         eventProcessor.putEvent(executionReport);
     }
 
-    private void processSnapshotFullRefresh(Message message) throws FieldNotFound {
-        List<MarketData> resultOrderBookData = new ArrayList<>();
-        String symbolName = message.getString(Symbol.FIELD);
-        String exchangeName = message.getString(SecurityExchange.FIELD);
-        for (int i = 1; i <= message.getInt(NoMDEntries.FIELD); i++) {
-            Group group = message.getGroup(i, NoMDEntries.FIELD);
-            char entryType = group.getChar(MDEntryType.FIELD);
-            BigDecimal size = new BigDecimal(group.getString(MDEntrySize.FIELD)).setScale(subscribedSymbol.getSizePower());
-            BigDecimal price = new BigDecimal(group.getString(MDEntryPx.FIELD)).setScale(subscribedSymbol.getPricePower());
-            switch (entryType) {
+    private void processSnapshotFullRefresh() {
+        MarketDataDecoder decoder = marketDataDecoder;
+        int symbolId = decoder.getSymbolId();
+        if (symbolId == SubscriptionManager.UNKNOWN) {
+            return;
+        }
+        List<MarketData> resultOrderBookData = new ArrayList<>(decoder.size());
+        for (int i = 0; i < decoder.size(); i++) {
+            switch (decoder.getEntryType(i)) {
                 case MDEntryType.BID:
-                    resultOrderBookData.add(new MarketData(price, size, MarketData.Type.Snapshot, io.xtrd.trading.Side.Buy));
+                    resultOrderBookData.add(new MarketData(decoder.getPrice(i), decoder.getSize(i), MarketData.Type.Snapshot, io.xtrd.trading.Side.Buy));
                     break;
                 case MDEntryType.OFFER:
-                    resultOrderBookData.add(new MarketData(price, size, MarketData.Type.Snapshot, io.xtrd.trading.Side.Sell));
+                    resultOrderBookData.add(new MarketData(decoder.getPrice(i), decoder.getSize(i), MarketData.Type.Snapshot, io.xtrd.trading.Side.Sell));
                     break;
             }
         }
+        //the deltas continue from the snapshot, or from whatever comes first when it has no sequence
+        subscriptions.setLastRptSeq(symbolId, decoder.getSnapshotRptSeq());
         if (!resultOrderBookData.isEmpty()) {
-            eventProcessor.putEvent(new MarketDataEvent(resultOrderBookData));
+            eventProcessor.putEvent(new MarketDataEvent(subscriptions.getSymbol(symbolId), resultOrderBookData));
         }
     }
 
-    private void processIncrementalRefresh(Message message) throws FieldNotFound {
-        String symbol = message.getString(Symbol.FIELD);
+    private void processIncrementalRefresh() {
+        MarketDataDecoder decoder = marketDataDecoder;
+        int symbolId = decoder.getSymbolId();
+        if (symbolId == SubscriptionManager.UNKNOWN) {
+            return;
+        }
+        io.xtrd.trading.Symbol symbol = subscriptions.getSymbol(symbolId);
+        long lastRptSeq = subscriptions.getLastRptSeq(symbolId);
         List<MarketData> resultTrades = new ArrayList<>();
-        List<MarketData> resultOrderBookData = new ArrayList<>();
-        for (int i = 1; i <= message.getInt(NoMDEntries.FIELD); i++) {
-            Group group = message.getGroup(i, NoMDEntries.FIELD);
-            char entryType = group.getChar(MDEntryType.FIELD);
-            char updateAction = group.getChar(MDUpdateAction.FIELD);
-            MarketData.Type type = getType(updateAction);
-            BigDecimal size = type == MarketData.Type.Delete || type == MarketData.Type.Reset ? BigDecimal.ZERO : new BigDecimal(group.getString(MDEntrySize.FIELD));
-            size = size.setScale(subscribedSymbol.getSizePower());
-            BigDecimal price = new BigDecimal(group.getString(MDEntryPx.FIELD)).setScale(subscribedSymbol.getPricePower());
-
-            switch (entryType) {
+        List<MarketData> resultOrderBookData = new ArrayList<>(decoder.size());
+        for (int i = 0; i < decoder.size(); i++) {
+            long rptSeq = decoder.getRptSeq(i);
+            if (rptSeq != 0) {
+                if (lastRptSeq != 0 && rptSeq != lastRptSeq + 1) {
+                    //ahead of the deltas of this message, the book drops them until the next snapshot
+                    eventProcessor.putEvent(new SequenceGapEvent(symbol, lastRptSeq + 1, rptSeq));
+                }
+                lastRptSeq = rptSeq;
+            }
+            MarketData.Type type = getType(decoder.getUpdateAction(i));
+            long size = type == MarketData.Type.Delete || type == MarketData.Type.Reset ? 0 : decoder.getSize(i);
+            long price = decoder.getPrice(i);
+
+            switch (decoder.getEntryType(i)) {
                 case MDEntryType.BID:
                     resultOrderBookData.add(new MarketData(price, size, type, io.xtrd.trading.Side.Buy));
                     break;
@@ -280,18 +371,19 @@ public class QuickFIXApplication implements Application {
                     break;
                 case MDEntryType.TRADE:
                     io.xtrd.trading.Side side = io.xtrd.trading.Side.Buy;
-                    if (group.getInt(ApiConstants.TAG_AGGRESSOR_SIDE) == 1) {
+                    if (decoder.getAggressorSide(i) == 1) {
                         side = io.xtrd.trading.Side.Sell;
                     }
                     resultTrades.add(new MarketData(price, size, MarketData.Type.Trade, side));
                     break;
             }
         }
+        subscriptions.setLastRptSeq(symbolId, lastRptSeq);
         if (!resultTrades.isEmpty()) {
-            eventProcessor.putEvent(new TradesEvent(resultTrades));
+            eventProcessor.putEvent(new TradesEvent(symbol, resultTrades));
         }
         if (!resultOrderBookData.isEmpty()) {
-            eventProcessor.putEvent(new MarketDataEvent(resultOrderBookData));
+            eventProcessor.putEvent(new MarketDataEvent(symbol, resultOrderBookData));
         }
     }
 
@@ -359,72 +451,42 @@ public class QuickFIXApplication implements Application {
         }
     }
 
-    private void subscribe(String symbol) {
+    //one pass over the sessions for all the queued subscription changes
+    private void sendSubscriptionRequests() {
         ArrayList<SessionID> sessions = initiator.getSessions();
-        if (sessions == null || sessions.isEmpty()) {
+        if (sessions == null || sessions.isEmpty() || !subscriptions.hasPending()) {
             return;
         }
+        List<SessionID> marketDataSessions = new ArrayList<>();
         for (SessionID sessionID : sessions) {
-            if (sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
-                continue;
-            }
-            try {
-                Session.sendToTarget(messagesFactory.getSubscribeRequestMessage(symbol, ApiConstants.EXCHANGE, getNextId()), sessionID);
-            } catch (SessionNotFound e) {
-                logger.error("Session: {} not found. Can't subscribe to Symbol {} ", sessionID, symbol, e);
-            } catch (Exception e) {
-                logger.error("An error occurred during subscribe to Symbol {}", symbol, e);
+            if (!sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
+                marketDataSessions.add(sessionID);
             }
         }
-    }
-
-    private String getNextId() {
-        return String.valueOf(requestId.getAndIncrement());
-    }
-
-    private Side getOrderSide(Order order) {
-        if (order.getSide() == io.xtrd.trading.Side.Buy) {
-            return new Side(Side.BUY);
-        } else {
-            return new Side(Side.SELL);
-        }
-    }
-
-    private void cancelOrder(Order order) {
-        ArrayList<SessionID> sessions = initiator.getSessions();
-        if (sessions == null || sessions.isEmpty()) {
-            return;
-        }
-        for (SessionID sessionID : sessions) {
-            if (!sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
-                continue;
+        subscriptions.flush((symbol, requestId) -> {
+            for (SessionID sessionID : marketDataSessions) {
+                try {
+                    Session.sendToTarget(messagesFactory.getUnsubscribeRequestMessage(symbol.getName(), ApiConstants.EXCHANGE, requestId), sessionID);
+                } catch (SessionNotFound e) {
+                    logger.error("Session: {} not found. Can't unsubscribe from Symbol {} ", sessionID, symbol, e);
+                } catch (Exception e) {
+                    logger.error("An error occurred during unsubscribe from Symbol {}", symbol, e);
+                }
             }
-            try {
-                Session.sendToTarget(messagesFactory.getOrderCancelRequest(fixAccount, order.getSymbol().getName(), order.getClOrdID(), "D".concat(order.getClOrdID()), order.getOrderID(), getOrderSide(order)), sessionID);
-            } catch (SessionNotFound e) {
-                logger.error("Session: {} not found. Can't subscribe to Symbol {} ", sessionID, order.getSymbol(), e);
-            } catch (Exception e) {
-                logger.error("An error occurred during subscribe to Symbol {}", order.getSymbol(), e);
+        }, (symbol, requestId) -> {
+            for (SessionID sessionID : marketDataSessions) {
+                try {
+                    Session.sendToTarget(messagesFactory.getSubscribeRequestMessage(symbol.getName(), ApiConstants.EXCHANGE, requestId), sessionID);
+                } catch (SessionNotFound e) {
+                    logger.error("Session: {} not found. Can't subscribe to Symbol {} ", sessionID, symbol, e);
+                } catch (Exception e) {
+                    logger.error("An error occurred during subscribe to Symbol {}", symbol, e);
+                }
             }
-        }
+        });
     }
 
-    private void newOrder(Order order) {
-        ArrayList<SessionID> sessions = initiator.getSessions();
-        if (sessions == null || sessions.isEmpty()) {
-            return;
-        }
-        for (SessionID sessionID : sessions) {
-            if (!sessionID.getSessionQualifier().equals(ApiConstants.TRADE_SESSION_QUALIFIER)) {
-                continue;
-            }
-            try {
-                Session.sendToTarget(messagesFactory.getNewOrderSingle(fixAccount, ApiConstants.EXCHANGE, order.getSymbol().getName(), getOrderSide(order), order.getSize(), order.getPrice(), order.getClOrdID()), sessionID);
-            } catch (SessionNotFound e) {
-                logger.error("Session: {} not found. Can't subscribe to Symbol {} ", sessionID, order.getSymbol(), e);
-            } catch (Exception e) {
-                logger.error("An error occurred during subscribe to Symbol {}", order.getSymbol(), e);
-            }
-        }
+    private String getNextId() {
+        return String.valueOf(requestId.getAndIncrement());
     }
 }
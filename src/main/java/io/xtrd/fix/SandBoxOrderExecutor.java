@@ -2,25 +2,41 @@ package io.xtrd.fix;
 
 import io.xtrd.EventProcessor;
 import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.FixedPoint;
 import io.xtrd.trading.Order;
 import io.xtrd.trading.OrderOperation;
 import io.xtrd.trading.Side;
 import io.xtrd.trading.events.OrderCommandEvent;
+import io.xtrd.trading.events.OrderMassCancelEvent;
 import io.xtrd.trading.events.PriceEvent;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class SandBoxOrderExecutor {
-    private HashMap<String, Order> orders = new HashMap<>();
+    //prices and order commands can be processed by different event processor lanes
+    private ConcurrentHashMap<String, Order> orders = new ConcurrentHashMap<>();
     private EventProcessor eventProcessor;
 
     public SandBoxOrderExecutor(EventProcessor eventProcessor) {
         this.eventProcessor = eventProcessor;
         eventProcessor.addConsumer(PriceEvent.class, getPriceConsumer());
         eventProcessor.addConsumer(OrderCommandEvent.class, getOrderConsumer());
+        eventProcessor.addConsumer(OrderMassCancelEvent.class, (Consumer<OrderMassCancelEvent>) this::massCancel);
+        eventProcessor.addConflationGuard(PriceEvent.class, this::fillsAnyOrder);
+    }
+
+    private boolean fillsAnyOrder(PriceEvent priceEvent) {
+        for (Order order : orders.values()) {
+            if (order.getSide() == Side.Buy && order.getPrice() >= priceEvent.getPrice()) {
+                return true;
+            } else if (order.getSide() == Side.Sell && order.getPrice() <= priceEvent.getPrice()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private Consumer<OrderCommandEvent> getOrderConsumer() {
@@ -29,6 +45,8 @@ public class SandBoxOrderExecutor {
                 newOrder(event.getOrder());
             } else if (event.getOperation() == OrderOperation.delete) {
                 cancelOrder(event.getOrder());
+            } else if (event.getOperation() == OrderOperation.replace) {
+                replaceOrder(event.getOrder());
             }
         };
     }
@@ -38,11 +56,11 @@ public class SandBoxOrderExecutor {
             Iterator<Order> iterator = orders.values().iterator();
             while (iterator.hasNext()) {
                 Order order = iterator.next();
-                if (order.getSide() == Side.Buy && order.getPrice().compareTo(priceEvent.getPrice()) >= 0) {
+                if (order.getSide() == Side.Buy && order.getPrice() >= priceEvent.getPrice()) {
                     //filled, should be removed from limit orders
                     iterator.remove();
                     sendFillExecutionReport(order);
-                } else if (order.getSide() == Side.Sell && order.getPrice().compareTo(priceEvent.getPrice()) <= 0) {
+                } else if (order.getSide() == Side.Sell && order.getPrice() <= priceEvent.getPrice()) {
                     //filled, should be removed from limit orders
                     iterator.remove();
                     sendFillExecutionReport(order);
@@ -51,16 +69,25 @@ public class SandBoxOrderExecutor {
         };
     }
 
+    //execution reports keep decimal quantities, like the ones coming from FIX
+    private static BigDecimal size(Order order) {
+        return FixedPoint.toBigDecimal(order.getSize(), order.getSymbol().getSizePower());
+    }
+
+    //at the limit price, without commission
     private void sendFillExecutionReport(Order order) {
         ExecutionReport executionReport = ExecutionReport
                 .builder()
                 .setOrderId(order.getClOrdID())
                 .setClOrdID(order.getClOrdID())
+                .setSymbol(order.getSymbol().getName())
+                .setSide(order.getSide())
                 .setLeavesQty(BigDecimal.ZERO)
-                .setCumQty(order.getSize())
-                .setLastQty(order.getSize())
+                .setCumQty(size(order))
+                .setLastQty(size(order))
+                .setLastPx(FixedPoint.toBigDecimal(order.getPrice(), order.getSymbol().getPricePower()))
                 .setOrderStatus(ExecutionReport.OrderStatus.FILLED)
-                .setTransactionTime(System.currentTimeMillis())
+                .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
                 .build();
         eventProcessor.putEvent(executionReport);
     }
@@ -71,15 +98,63 @@ public class SandBoxOrderExecutor {
                 .builder()
                 .setOrderId(order.getClOrdID())
                 .setClOrdID(order.getClOrdID())
-                .setLeavesQty(order.getSize())
+                .setSymbol(order.getSymbol().getName())
+                .setSide(order.getSide())
+                .setLeavesQty(size(order))
                 .setCumQty(BigDecimal.ZERO)
                 .setLastQty(BigDecimal.ZERO)
                 .setOrderStatus(ExecutionReport.OrderStatus.NEW)
-                .setTransactionTime(System.currentTimeMillis())
+                .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
+                .build();
+        eventProcessor.putEvent(executionReport);
+    }
+
+    //reported for the new ClOrdID, rejected when the original is not working anymore
+    private void replaceOrder(Order order) {
+        Order original = orders.remove(order.getOrigClOrdID());
+        ExecutionReport.OrderStatus status = ExecutionReport.OrderStatus.REJECTED;
+        if (original != null) {
+            orders.put(order.getClOrdID(), order);
+            status = ExecutionReport.OrderStatus.REPLACED;
+        }
+        ExecutionReport executionReport = ExecutionReport
+                .builder()
+                .setOrderId(order.getOrderID())
+                .setClOrdID(order.getClOrdID())
+                .setSymbol(order.getSymbol().getName())
+                .setSide(order.getSide())
+                .setLeavesQty(size(order))
+                .setCumQty(BigDecimal.ZERO)
+                .setLastQty(BigDecimal.ZERO)
+                .setOrderStatus(status)
+                .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
                 .build();
         eventProcessor.putEvent(executionReport);
     }
 
+    private void massCancel(OrderMassCancelEvent event) {
+        Iterator<Order> iterator = orders.values().iterator();
+        while (iterator.hasNext()) {
+            Order order = iterator.next();
+            if (order.getSide() == event.getSide() && order.getSymbol().getName().equals(event.getSymbol().getName())) {
+                iterator.remove();
+                ExecutionReport executionReport = ExecutionReport
+                        .builder()
+                        .setOrderId(order.getClOrdID())
+                        .setClOrdID(order.getClOrdID())
+                        .setSymbol(order.getSymbol().getName())
+                        .setSide(order.getSide())
+                        .setLeavesQty(size(order))
+                        .setCumQty(BigDecimal.ZERO)
+                        .setLastQty(BigDecimal.ZERO)
+                        .setOrderStatus(ExecutionReport.OrderStatus.CANCELED)
+                        .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
+                        .build();
+                eventProcessor.putEvent(executionReport);
+            }
+        }
+    }
+
     private void cancelOrder(Order order) {
         Order orderTmp = orders.remove(order.getClOrdID());
         if (orderTmp!=null) {
@@ -87,11 +162,13 @@ public class SandBoxOrderExecutor {
                     .builder()
                     .setOrderId(order.getClOrdID())
                     .setClOrdID(order.getClOrdID())
-                    .setLeavesQty(order.getSize())
+                    .setSymbol(order.getSymbol().getName())
+                    .setSide(order.getSide())
+                    .setLeavesQty(size(order))
                     .setCumQty(BigDecimal.ZERO)
                     .setLastQty(BigDecimal.ZERO)
                     .setOrderStatus(ExecutionReport.OrderStatus.CANCELED)
-                    .setTransactionTime(System.currentTimeMillis())
+                    .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
                     .build();
             eventProcessor.putEvent(executionReport);
         } else {
@@ -99,11 +176,13 @@ public class SandBoxOrderExecutor {
                     .builder()
                     .setOrderId(order.getClOrdID())
                     .setClOrdID(order.getClOrdID())
-                    .setLeavesQty(order.getSize())
+                    .setSymbol(order.getSymbol().getName())
+                    .setSide(order.getSide())
+                    .setLeavesQty(size(order))
                     .setCumQty(BigDecimal.ZERO)
                     .setLastQty(BigDecimal.ZERO)
                     .setOrderStatus(ExecutionReport.OrderStatus.REJECTED)
-                    .setTransactionTime(System.currentTimeMillis())
+                    .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
                     .build();
             eventProcessor.putEvent(executionReport);
         }
@@ -0,0 +1,146 @@
+package io.xtrd.fix;
+
+import io.xtrd.trading.Symbol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Market data subscriptions of many symbols. Every subscribed symbol gets a dense int id, the low bits of each
+ * MDReqID sent for it, so a refresh is routed by its numeric MDReqID without looking up strings. A MDReqID of
+ * an older subscription of the symbol no longer resolves and its late messages are dropped.
+ * Subscribe and unsubscribe requests are queued and sent together by {@link #flush(BiConsumer, BiConsumer)}.
+ * Requests are made on one thread, resolve is called from the session thread.
+ */
+public class SubscriptionManager {
+    static final int SYMBOL_BITS = 10;
+    public static final int MAX_SYMBOLS = 1 << SYMBOL_BITS;
+    public static final int UNKNOWN = -1;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Symbol[] symbols = new Symbol[MAX_SYMBOLS];
+    //MDReqID of the active subscription, 0 when not subscribed
+    private final AtomicLongArray requestIds = new AtomicLongArray(MAX_SYMBOLS);
+    //RptSeq of the last incremental entry, 0 when unknown, session thread only
+    private final long[] lastRptSeq = new long[MAX_SYMBOLS];
+    private volatile int count;
+    private long nextRequest = 1;
+    private final List<Integer> pendingUnsubscribes = new ArrayList<>();
+    private final List<Integer> pendingSubscribes = new ArrayList<>();
+
+    public int idOf(Symbol symbol) {
+        Integer id = ids.get(symbol.getName());
+        if (id == null) {
+            if (count == MAX_SYMBOLS) {
+                throw new IllegalStateException("More than " + MAX_SYMBOLS + " symbols");
+            }
+            id = count;
+            symbols[id] = symbol;
+            ids.put(symbol.getName(), id);
+            count = id + 1;
+        }
+        return id;
+    }
+
+    //a subscribed symbol is subscribed again with a new MDReqID
+    public void subscribe(Symbol symbol) {
+        Integer id = idOf(symbol);
+        symbols[id] = symbol;
+        if (!pendingSubscribes.contains(id)) {
+            pendingSubscribes.add(id);
+        }
+    }
+
+    public void unsubscribe(Symbol symbol) {
+        Integer id = ids.get(symbol.getName());
+        if (id == null) {
+            return;
+        }
+        pendingSubscribes.remove(id);
+        if (!pendingUnsubscribes.contains(id)) {
+            pendingUnsubscribes.add(id);
+        }
+    }
+
+    //a fresh snapshot, the old subscription is dropped first
+    public void resubscribe(Symbol symbol) {
+        unsubscribe(symbol);
+        subscribe(symbol);
+    }
+
+    /**
+     * Passes every queued request to the senders with its MDReqID, unsubscribes first.
+     */
+    public void flush(BiConsumer<Symbol, String> unsubscribeSender, BiConsumer<Symbol, String> subscribeSender) {
+        for (int id : pendingUnsubscribes) {
+            long requestId = requestIds.getAndSet(id, 0);
+            if (requestId != 0) {
+                unsubscribeSender.accept(symbols[id], String.valueOf(requestId));
+            }
+        }
+        pendingUnsubscribes.clear();
+        for (int id : pendingSubscribes) {
+            long requestId = (nextRequest++ << SYMBOL_BITS) | id;
+            requestIds.set(id, requestId);
+            subscribeSender.accept(symbols[id], String.valueOf(requestId));
+        }
+        pendingSubscribes.clear();
+    }
+
+    public boolean hasPending() {
+        return !pendingUnsubscribes.isEmpty() || !pendingSubscribes.isEmpty();
+    }
+
+    /**
+     * @param requestId numeric MDReqID of the message, negative when it has none
+     * @param text      holds the Symbol value of the message from start to end, compared only without a MDReqID
+     * @return id of the subscribed symbol or UNKNOWN
+     */
+    public int resolve(long requestId, CharSequence text, int start, int end) {
+        if (requestId >= 0) {
+            int id = (int) (requestId & (MAX_SYMBOLS - 1));
+            return id < count && requestIds.get(id) == requestId ? id : UNKNOWN;
+        }
+        for (int id = 0; id < count; id++) {
+            if (requestIds.get(id) != 0 && regionMatches(symbols[id].getName(), text, start, end)) {
+                return id;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean regionMatches(String name, CharSequence text, int start, int end) {
+        if (text == null || name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Symbol getSymbol(int id) {
+        return symbols[id];
+    }
+
+    public int getPricePower(int id) {
+        return symbols[id].getPricePower();
+    }
+
+    public int getSizePower(int id) {
+        return symbols[id].getSizePower();
+    }
+
+    public long getLastRptSeq(int id) {
+        return lastRptSeq[id];
+    }
+
+    public void setLastRptSeq(int id, long rptSeq) {
+        lastRptSeq[id] = rptSeq;
+    }
+}
@@ -0,0 +1,234 @@
+package io.xtrd.journal;
+
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.MarketData;
+import io.xtrd.trading.Side;
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.MarketDataEvent;
+import io.xtrd.trading.events.SequenceGapEvent;
+import io.xtrd.trading.events.SessionStatus;
+import io.xtrd.trading.events.TradesEvent;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the events that drive the bot. Market data starts with its symbol, book prices and sizes
+ * are already fixed point and are written as longs, report decimals as scale plus unscaled long whenever the
+ * value fits, enums as ordinals.
+ */
+final class EventCodec {
+    static final byte NONE = 0;
+    static final byte MARKET_DATA = 1;
+    static final byte TRADES = 2;
+    static final byte EXECUTION_REPORT = 3;
+    static final byte SESSION_STATUS = 4;
+    static final byte SEQUENCE_GAP = 5;
+    private static final byte NULL_VALUE = 0;
+    private static final byte LONG_VALUE = 1;
+    private static final byte BIG_VALUE = 2;
+    private static final MarketData.Type[] MARKET_DATA_TYPES = MarketData.Type.values();
+    private static final Side[] SIDES = Side.values();
+    private static final ExecutionReport.OrderStatus[] ORDER_STATUSES = ExecutionReport.OrderStatus.values();
+    private static final SessionStatus[] SESSION_STATUSES = SessionStatus.values();
+
+    private EventCodec() {
+    }
+
+    static byte typeOf(IEvent event) {
+        Class<? extends IEvent> eventClass = event.getClass();
+        if (eventClass == MarketDataEvent.class) {
+            return MARKET_DATA;
+        } else if (eventClass == TradesEvent.class) {
+            return TRADES;
+        } else if (eventClass == ExecutionReport.class) {
+            return EXECUTION_REPORT;
+        } else if (eventClass == SessionStatus.class) {
+            return SESSION_STATUS;
+        } else if (eventClass == SequenceGapEvent.class) {
+            return SEQUENCE_GAP;
+        }
+        return NONE;
+    }
+
+    static void encode(byte type, IEvent event, ByteBuffer buffer) {
+        switch (type) {
+            case MARKET_DATA:
+                writeSymbol(((MarketDataEvent) event).getSymbol(), buffer);
+                writeMarketData(((MarketDataEvent) event).getMarketData(), buffer);
+                break;
+            case TRADES:
+                writeSymbol(((TradesEvent) event).getSymbol(), buffer);
+                writeMarketData(((TradesEvent) event).getMarketData(), buffer);
+                break;
+            case EXECUTION_REPORT:
+                ExecutionReport report = (ExecutionReport) event;
+                writeString(report.getOrderId(), buffer);
+                writeString(report.getClOrdID(), buffer);
+                writeString(report.getSymbol(), buffer);
+                writeEnum(report.getSide(), buffer);
+                writeEnum(report.getOrderStatus(), buffer);
+                writeDecimal(report.getLastQty(), buffer);
+                writeDecimal(report.getLastPx(), buffer);
+                writeDecimal(report.getCommission(), buffer);
+                writeDecimal(report.getCumQty(), buffer);
+                writeDecimal(report.getLeavesQty(), buffer);
+                buffer.putLong(report.getTransactionTime());
+                writeString(report.getOrdRejReason(), buffer);
+                writeString(report.getText(), buffer);
+                break;
+            case SESSION_STATUS:
+                writeEnum((SessionStatus) event, buffer);
+                break;
+            case SEQUENCE_GAP:
+                SequenceGapEvent gap = (SequenceGapEvent) event;
+                writeSymbol(gap.getSymbol(), buffer);
+                buffer.putLong(gap.getExpected());
+                buffer.putLong(gap.getReceived());
+                break;
+            default:
+                throw new IllegalArgumentException("Event type " + type + " is not journaled");
+        }
+    }
+
+    //symbols are shared by name through the map, new names are added to it
+    static IEvent decode(byte type, ByteBuffer buffer, Map<String, Symbol> symbols) {
+        switch (type) {
+            case MARKET_DATA:
+                return new MarketDataEvent(readSymbol(buffer, symbols), readMarketData(buffer));
+            case TRADES:
+                return new TradesEvent(readSymbol(buffer, symbols), readMarketData(buffer));
+            case EXECUTION_REPORT:
+                return ExecutionReport.builder()
+                        .setOrderId(readString(buffer))
+                        .setClOrdID(readString(buffer))
+                        .setSymbol(readString(buffer))
+                        .setSide(readEnum(SIDES, buffer))
+                        .setOrderStatus(readEnum(ORDER_STATUSES, buffer))
+                        .setLastQty(readDecimal(buffer))
+                        .setLastPx(readDecimal(buffer))
+                        .setCommission(readDecimal(buffer))
+                        .setCumQty(readDecimal(buffer))
+                        .setLeavesQty(readDecimal(buffer))
+                        .setTransactionTime(buffer.getLong())
+                        .setOrdRejReason(readString(buffer))
+                        .setText(readString(buffer))
+                        .build();
+            case SESSION_STATUS:
+                return readEnum(SESSION_STATUSES, buffer);
+            case SEQUENCE_GAP:
+                return new SequenceGapEvent(readSymbol(buffer, symbols), buffer.getLong(), buffer.getLong());
+            default:
+                throw new IllegalArgumentException("Unknown journaled event type " + type);
+        }
+    }
+
+    private static void writeSymbol(Symbol symbol, ByteBuffer buffer) {
+        writeString(symbol.getName(), buffer);
+        buffer.putInt(symbol.getSizePower());
+        buffer.putInt(symbol.getPricePower());
+    }
+
+    private static Symbol readSymbol(ByteBuffer buffer, Map<String, Symbol> symbols) {
+        String name = readString(buffer);
+        int sizePower = buffer.getInt();
+        int pricePower = buffer.getInt();
+        Symbol symbol = symbols.get(name);
+        if (symbol == null) {
+            symbol = new Symbol(name, sizePower, pricePower);
+            symbols.put(name, symbol);
+        }
+        return symbol;
+    }
+
+    private static void writeMarketData(List<MarketData> marketData, ByteBuffer buffer) {
+        buffer.putInt(marketData.size());
+        for (MarketData entry : marketData) {
+            writeEnum(entry.getType(), buffer);
+            writeEnum(entry.getSide(), buffer);
+            buffer.putLong(entry.getPrice());
+            buffer.putLong(entry.getSize());
+        }
+    }
+
+    private static List<MarketData> readMarketData(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<MarketData> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MarketData.Type type = readEnum(MARKET_DATA_TYPES, buffer);
+            Side side = readEnum(SIDES, buffer);
+            long price = buffer.getLong();
+            long size = buffer.getLong();
+            result.add(new MarketData(price, size, type, side));
+        }
+        return result;
+    }
+
+    private static void writeEnum(Enum<?> value, ByteBuffer buffer) {
+        buffer.put((byte) (value == null ? -1 : value.ordinal()));
+    }
+
+    private static <T> T readEnum(T[] values, ByteBuffer buffer) {
+        byte ordinal = buffer.get();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    private static void writeDecimal(BigDecimal value, ByteBuffer buffer) {
+        if (value == null) {
+            buffer.put(NULL_VALUE);
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            buffer.put(LONG_VALUE);
+            buffer.putInt(value.scale());
+            buffer.putLong(unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            buffer.put(BIG_VALUE);
+            buffer.putInt(value.scale());
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer) {
+        byte kind = buffer.get();
+        if (kind == NULL_VALUE) {
+            return null;
+        }
+        int scale = buffer.getInt();
+        if (kind == LONG_VALUE) {
+            return BigDecimal.valueOf(buffer.getLong(), scale);
+        }
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    private static void writeString(String value, ByteBuffer buffer) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
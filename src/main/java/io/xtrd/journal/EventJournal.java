@@ -0,0 +1,234 @@
+package io.xtrd.journal;
+
+import io.xtrd.trading.events.IEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the input events, written to memory-mapped segment files by its own thread.
+ * Producers only enqueue the event, encoding and disk I/O never happen on the event processor path.
+ * <p>
+ * A segment starts with a header (magic, version, first sequence) followed by records framed as
+ * length, CRC32 of the payload and the payload: type, sequence, timestamp and the encoded event.
+ * The length is written last, so a reader never sees a partially written record. A zero length marks
+ * the end of the journal, {@link #END_OF_SEGMENT} that the next record is in the following segment.
+ */
+public class EventJournal {
+    static final int MAGIC = 0x58545244;
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 16;
+    static final int FRAME_SIZE = 8;
+    static final int END_OF_SEGMENT = -1;
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".dat";
+    private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private final Path directory;
+    private final int segmentSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+    private volatile Thread thread;
+    private volatile boolean running;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private long sequence;
+
+    public EventJournal(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public EventJournal(Path directory, int segmentSize) {
+        if (segmentSize <= HEADER_SIZE + FRAME_SIZE) {
+            throw new IllegalArgumentException("Journal segment size is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory);
+        //a new run never appends to the segments of a previous one
+        segmentIndex = existing.isEmpty() ? 0 : segmentIndex(existing.get(existing.size() - 1)) + 1;
+        openSegment();
+        running = true;
+        thread = new Thread(this::run, "Event journal");
+        thread.start();
+    }
+
+    public void stop() {
+        Thread current = thread;
+        if (current == null) {
+            return;
+        }
+        thread = null;
+        //no interrupt, it would close the mapped file channel under the writer
+        running = false;
+        try {
+            current.join(5000);
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting for the journal writer");
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Event journal stopped, {} events written", writtenCount.get());
+    }
+
+    //events the journal doesn't know are ignored
+    public void append(IEvent event) {
+        byte type = EventCodec.typeOf(event);
+        if (type != EventCodec.NONE) {
+            queue.offer(new Pending(type, event, System.currentTimeMillis()));
+        }
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                Pending pending = queue.poll(100, TimeUnit.MILLISECONDS);
+                while (pending != null) {
+                    write(pending);
+                    pending = queue.poll();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.debug("Journal writer interrupted, exiting");
+            Thread.currentThread().interrupt();
+        }
+        try {
+            //whatever was appended before stop still goes to disk
+            Pending pending;
+            while ((pending = queue.poll()) != null) {
+                write(pending);
+            }
+            closeSegment();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    private void write(Pending pending) {
+        try {
+            ByteBuffer payload = encode(pending);
+            int length = payload.remaining();
+            if (HEADER_SIZE + FRAME_SIZE + length + 4 > segmentSize) {
+                logger.error("Journal record of {} bytes doesn't fit a segment, dropped", length);
+                return;
+            }
+            //keep room for the end of segment marker
+            if (segment.position() + FRAME_SIZE + length + 4 > segmentSize) {
+                segment.putInt(segment.position(), END_OF_SEGMENT);
+                closeSegment();
+                segmentIndex++;
+                openSegment();
+            }
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            int position = segment.position();
+            segment.position(position + 4);
+            segment.putInt((int) crc.getValue());
+            segment.put(payload);
+            segment.putInt(position, length);
+            writtenCount.lazySet(writtenCount.get() + 1);
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    private ByteBuffer encode(Pending pending) {
+        while (true) {
+            scratch.clear();
+            try {
+                scratch.put(pending.type);
+                scratch.putLong(sequence + 1);
+                scratch.putLong(pending.timestamp);
+                EventCodec.encode(pending.type, pending.event, scratch);
+                sequence++;
+                scratch.flip();
+                return scratch;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(segmentName(segmentIndex));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(sequence + 1);
+        logger.info("Journal segment {} opened", path);
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            segment.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    static String segmentName(int index) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    static int segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    result.add(path);
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static class Pending {
+        private final byte type;
+        private final IEvent event;
+        private final long timestamp;
+
+        Pending(byte type, IEvent event, long timestamp) {
+            this.type = type;
+            this.event = event;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.xtrd.journal;
+
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.IEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//reads the records of every segment in the directory in order, runs follow each other
+public class JournalReader implements Closeable {
+    private final List<Path> segments;
+    private final CRC32 crc = new CRC32();
+    private int segmentIndex = -1;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private Path segmentPath;
+    //one instance per symbol name, consumers compare symbols by reference
+    private final Map<String, Symbol> symbols = new HashMap<>();
+
+    public JournalReader(Path directory) throws IOException {
+        segments = EventJournal.segments(directory);
+    }
+
+    //events of the symbol with this name carry the given instance
+    public void putSymbol(Symbol symbol) {
+        symbols.put(symbol.getName(), symbol);
+    }
+
+    //next record, null at the end of the journal
+    public JournalRecord read() throws IOException {
+        while (true) {
+            if (segment == null && !nextSegment()) {
+                return null;
+            }
+            int length = segment.remaining() < EventJournal.FRAME_SIZE ? 0 : segment.getInt(segment.position());
+            if (length == 0 || length == EventJournal.END_OF_SEGMENT) {
+                closeSegment();
+                continue;
+            }
+            if (length < 0 || segment.position() + EventJournal.FRAME_SIZE + length > segment.limit()) {
+                throw new IOException("Corrupted record length " + length + " at " + segment.position() + " in " + segmentPath);
+            }
+            int position = segment.position();
+            int checksum = segment.getInt(position + 4);
+            ByteBuffer payload = segment.duplicate();
+            payload.position(position + EventJournal.FRAME_SIZE);
+            payload.limit(position + EventJournal.FRAME_SIZE + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch at " + position + " in " + segmentPath);
+            }
+            segment.position(position + EventJournal.FRAME_SIZE + length);
+            byte type = payload.get();
+            long sequence = payload.getLong();
+            long timestamp = payload.getLong();
+            IEvent event = EventCodec.decode(type, payload, symbols);
+            return new JournalRecord(sequence, timestamp, event);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.size();
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (++segmentIndex >= segments.size()) {
+            return false;
+        }
+        segmentPath = segments.get(segmentIndex);
+        channel = FileChannel.open(segmentPath, StandardOpenOption.READ);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (segment.remaining() < EventJournal.HEADER_SIZE || segment.getInt() != EventJournal.MAGIC) {
+            throw new IOException(segmentPath + " is not a journal segment");
+        }
+        int version = segment.getInt();
+        if (version != EventJournal.VERSION) {
+            throw new IOException("Unsupported journal version " + version + " in " + segmentPath);
+        }
+        //first sequence of the segment
+        segment.getLong();
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        segment = null;
+    }
+}
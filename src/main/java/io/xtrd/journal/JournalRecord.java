@@ -0,0 +1,29 @@
+package io.xtrd.journal;
+
+import io.xtrd.trading.events.IEvent;
+
+public class JournalRecord {
+    private final long sequence;
+    private final long timestamp;
+    private final IEvent event;
+
+    JournalRecord(long sequence, long timestamp, IEvent event) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.event = event;
+    }
+
+    //position of the event in the journal, starts from 1
+    public long getSequence() {
+        return sequence;
+    }
+
+    //wall clock millis the event was put to the event processor
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public IEvent getEvent() {
+        return event;
+    }
+}
@@ -0,0 +1,16 @@
+package io.xtrd.replay;
+
+import io.xtrd.trading.events.IEvent;
+
+//journal time of the events following it
+class ClockTick implements IEvent {
+    private final long time;
+
+    ClockTick(long time) {
+        this.time = time;
+    }
+
+    long getTime() {
+        return time;
+    }
+}
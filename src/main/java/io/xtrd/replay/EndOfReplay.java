@@ -0,0 +1,7 @@
+package io.xtrd.replay;
+
+import io.xtrd.trading.events.IEvent;
+
+//put after the last recorded event, everything it caused is processed before it is dispatched
+class EndOfReplay implements IEvent {
+}
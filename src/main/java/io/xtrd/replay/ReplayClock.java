@@ -0,0 +1,17 @@
+package io.xtrd.replay;
+
+import io.xtrd.Clock;
+
+//recorded time, moved forward by ClockTick events in dispatch order
+public class ReplayClock implements Clock {
+    private volatile long time;
+
+    @Override
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    void setTime(long time) {
+        this.time = time;
+    }
+}
@@ -0,0 +1,200 @@
+package io.xtrd.replay;
+
+import io.xtrd.ApiConstants;
+import io.xtrd.EventProcessor;
+import io.xtrd.WaitStrategy;
+import io.xtrd.fix.SandBoxOrderExecutor;
+import io.xtrd.journal.JournalReader;
+import io.xtrd.journal.JournalRecord;
+import io.xtrd.trading.Book;
+import io.xtrd.trading.Brick;
+import io.xtrd.trading.BrickBatch;
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.FixedPoint;
+import io.xtrd.trading.OMS;
+import io.xtrd.trading.Order;
+import io.xtrd.trading.PositionEngine;
+import io.xtrd.trading.PriceSource;
+import io.xtrd.trading.RenkoBox;
+import io.xtrd.trading.RenkoModel;
+import io.xtrd.trading.RiskGate;
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.OrderCommandEvent;
+import io.xtrd.trading.events.OrderMassCancelEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+/**
+ * Feeds a recorded journal through an event processor wired like production: price source, RenkoModel,
+ * OMS and the sand box executor, without JavaFX and FIX. Consumers see the recorded time through a
+ * {@link ReplayClock}, so the same journal always gives the same bricks and orders.
+ */
+public class ReplayDriver {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayDriver.class);
+    private static final int RING_SIZE = 1 << 16;
+    private final Properties config;
+    private final Path journalDirectory;
+    private Consumer<String> output = line -> {
+    };
+
+    public ReplayDriver(Properties config, Path journalDirectory) {
+        this.config = config;
+        this.journalDirectory = journalDirectory;
+    }
+
+    //receives a line per brick and order command, in processing order
+    public void setOutput(Consumer<String> output) {
+        this.output = output;
+    }
+
+    public ReplayResult run() throws Exception {
+        WaitStrategy waitStrategy = WaitStrategy.valueOf(config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_WAIT_STRATEGY, WaitStrategy.BLOCKING.name()).trim());
+        EventProcessor eventProcessor = new EventProcessor(RING_SIZE, waitStrategy);
+        String batchSizeStr = config.getProperty(ApiConstants.CONFIG_EVENT_PROCESSOR_BATCH_SIZE);
+        if (batchSizeStr != null) {
+            eventProcessor.setBatchSize(Integer.parseInt(batchSizeStr.trim()));
+        }
+        ReplayClock clock = new ReplayClock();
+        eventProcessor.setClock(clock);
+        eventProcessor.addConsumer(ClockTick.class, (Consumer<ClockTick>) tick -> clock.setTime(tick.getTime()));
+
+        Symbol symbol = new Symbol(config.getProperty(ApiConstants.CONFIG_REPLAY_SYMBOL, "REPLAY").trim(),
+                Integer.parseInt(config.getProperty(ApiConstants.CONFIG_REPLAY_SIZE_POWER, "0").trim()),
+                Integer.parseInt(config.getProperty(ApiConstants.CONFIG_REPLAY_PRICE_POWER, "0").trim()));
+        RenkoBox box = RenkoBox.valueOf(config.getProperty(ApiConstants.CONFIG_RENKO_BOX, RenkoBox.FIXED.name()).trim());
+        long[] brickSizes = RenkoModel.parseSizes(config.getProperty(ApiConstants.CONFIG_RENKO_SIZE), box.parameterPower(symbol));
+        long orderSize = FixedPoint.parse(config.getProperty(ApiConstants.CONFIG_ORDER_SIZE).trim(), symbol.getSizePower());
+        int maxPositionHeld = Integer.parseInt(config.getProperty(ApiConstants.CONFIG_ORDER_MAX_POSITIONS_HELD, "1").trim());
+        long[] counts = new long[2];
+        //same registration order as the application
+        new SandBoxOrderExecutor(eventProcessor);
+        PositionEngine positionEngine = new PositionEngine(symbol, eventProcessor);
+        RiskGate riskGate = new RiskGate(symbol, positionEngine, eventProcessor);
+        String maxOrderSize = config.getProperty(ApiConstants.CONFIG_RISK_MAX_ORDER_SIZE);
+        if (maxOrderSize != null) {
+            riskGate.setMaxOrderSize(FixedPoint.parse(maxOrderSize.trim(), symbol.getSizePower()));
+        }
+        String maxNotional = config.getProperty(ApiConstants.CONFIG_RISK_MAX_NOTIONAL);
+        if (maxNotional != null) {
+            riskGate.setMaxNotional(FixedPoint.parse(maxNotional.trim(), symbol.getPricePower() + symbol.getSizePower()));
+        }
+        String maxOpenOrders = config.getProperty(ApiConstants.CONFIG_RISK_MAX_OPEN_ORDERS);
+        if (maxOpenOrders != null) {
+            riskGate.setMaxOpenOrders(Integer.parseInt(maxOpenOrders.trim()));
+        }
+        String priceCollarBps = config.getProperty(ApiConstants.CONFIG_RISK_PRICE_COLLAR_BPS);
+        if (priceCollarBps != null) {
+            riskGate.setPriceCollarBps(Long.parseLong(priceCollarBps.trim()));
+        }
+        String maxPosition = config.getProperty(ApiConstants.CONFIG_RISK_MAX_POSITION);
+        if (maxPosition != null) {
+            riskGate.setMaxPosition(FixedPoint.parse(maxPosition.trim(), symbol.getSizePower()));
+        }
+        for (int series = 0; series < brickSizes.length; series++) {
+            OMS oms = new OMS(symbol, series, orderSize, maxPositionHeld, eventProcessor);
+            oms.setMassCancel(brickSizes.length == 1);
+            oms.setRiskGate(riskGate);
+        }
+        RenkoModel renkoModel = new RenkoModel(brickSizes, eventProcessor);
+        renkoModel.setBox(box);
+        renkoModel.setReversal(Integer.parseInt(config.getProperty(ApiConstants.CONFIG_RENKO_REVERSAL, "1").trim()));
+        renkoModel.setAtrPeriod(Integer.parseInt(config.getProperty(ApiConstants.CONFIG_RENKO_ATR_BARS, "14").trim()),
+                Long.parseLong(config.getProperty(ApiConstants.CONFIG_RENKO_ATR_BAR_SECONDS, "60").trim()) * 1000L);
+        PriceSource priceSource = PriceSource.valueOf(config.getProperty(ApiConstants.CONFIG_PRICE_SOURCE, PriceSource.TRADES.name()).trim());
+        Book book = priceSource.attach(symbol, eventProcessor, Boolean.parseBoolean(config.getProperty(ApiConstants.CONFIG_BOOK_TOB_PER_BATCH, "false").trim()));
+        if (book != null) {
+            String depth = config.getProperty(ApiConstants.CONFIG_BOOK_VWAP_DEPTH);
+            if (depth != null) {
+                book.setDepthTicks((int) FixedPoint.parse(depth.trim(), symbol.getPricePower()));
+            }
+            String minPriceChange = config.getProperty(ApiConstants.CONFIG_BOOK_MIN_PRICE_CHANGE);
+            if (minPriceChange != null) {
+                book.setMinPriceChange(FixedPoint.parse(minPriceChange.trim(), symbol.getPricePower()));
+            }
+        }
+        eventProcessor.addConsumer(BrickBatch.class, (Consumer<BrickBatch>) bricks -> {
+            for (int i = 0; i < bricks.size(); i++) {
+                Brick brick = bricks.get(i);
+                counts[0]++;
+                output.accept("brick " + brick.getSeries() + " " + brick.getTime() + " " + FixedPoint.toString(brick.getOpen(), symbol.getPricePower())
+                        + " " + FixedPoint.toString(brick.getClose(), symbol.getPricePower()));
+            }
+        });
+        eventProcessor.addConsumer(OrderCommandEvent.class, (Consumer<OrderCommandEvent>) command -> {
+            counts[1]++;
+            Order order = command.getOrder();
+            output.accept("order " + command.getOperation() + " " + order.getClOrdID() + " " + order.getSide() + " "
+                    + FixedPoint.toString(order.getPrice(), symbol.getPricePower()) + " "
+                    + FixedPoint.toString(order.getSize(), symbol.getSizePower()));
+        });
+        eventProcessor.addConsumer(OrderMassCancelEvent.class, (Consumer<OrderMassCancelEvent>) command -> {
+            counts[1]++;
+            output.accept("order massCancel " + command.getClOrdID() + " " + command.getSide());
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(EndOfReplay.class, event -> done.countDown());
+
+        long inputEvents = 0;
+        long skippedEvents = 0;
+        long start = System.nanoTime();
+        eventProcessor.start();
+        try (JournalReader reader = new JournalReader(journalDirectory)) {
+            //the book and the OMS listen to this instance only, other journaled symbols pass by
+            reader.putSymbol(symbol);
+            long lastTime = Long.MIN_VALUE;
+            JournalRecord record;
+            while ((record = reader.read()) != null) {
+                if (record.getEvent() instanceof ExecutionReport) {
+                    skippedEvents++;
+                    continue;
+                }
+                if (record.getTimestamp() != lastTime) {
+                    lastTime = record.getTimestamp();
+                    eventProcessor.putEvent(new ClockTick(lastTime));
+                }
+                eventProcessor.putEvent(record.getEvent());
+                inputEvents++;
+            }
+        }
+        eventProcessor.putEvent(new EndOfReplay());
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        eventProcessor.stop();
+        return new ReplayResult(inputEvents, skippedEvents, counts[0], counts[1], elapsed, positionEngine.getSnapshot());
+    }
+
+    /**
+     * Arguments: config file, journal directory and optionally a file for the bricks and orders.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: ReplayDriver <config> <journal dir> [output file]");
+        }
+        //no MainApp here, it would pull in JavaFX
+        Properties config = new Properties();
+        try (FileReader reader = new FileReader(args[0])) {
+            config.load(reader);
+        }
+        ReplayDriver driver = new ReplayDriver(config, Paths.get(args[1]));
+        PrintWriter writer = args.length > 2 ? new PrintWriter(Files.newBufferedWriter(Paths.get(args[2]))) : null;
+        if (writer != null) {
+            driver.setOutput(writer::println);
+        }
+        try {
+            logger.info("{}", driver.run());
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
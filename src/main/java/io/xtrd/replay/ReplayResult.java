@@ -0,0 +1,62 @@
+package io.xtrd.replay;
+
+import io.xtrd.trading.FixedPoint;
+import io.xtrd.trading.PositionSnapshot;
+
+import java.util.concurrent.TimeUnit;
+
+public class ReplayResult {
+    private final long inputEvents;
+    private final long skippedEvents;
+    private final long bricks;
+    private final long orders;
+    private final long elapsedNanos;
+    private final PositionSnapshot position;
+
+    ReplayResult(long inputEvents, long skippedEvents, long bricks, long orders, long elapsedNanos, PositionSnapshot position) {
+        this.inputEvents = inputEvents;
+        this.skippedEvents = skippedEvents;
+        this.bricks = bricks;
+        this.orders = orders;
+        this.elapsedNanos = elapsedNanos;
+        this.position = position;
+    }
+
+    public long getInputEvents() {
+        return inputEvents;
+    }
+
+    //recorded execution reports, the sand box executor produces its own
+    public long getSkippedEvents() {
+        return skippedEvents;
+    }
+
+    public long getBricks() {
+        return bricks;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    //at the end of the replay, filled by the sand box executor
+    public PositionSnapshot getPosition() {
+        return position;
+    }
+
+    public double getEventsPerSecond() {
+        return elapsedNanos == 0 ? 0 : inputEvents * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Replayed %d events (%d skipped) in %d ms, %.0f events/sec, %d bricks, %d order commands, position %s, net PnL %s",
+                inputEvents, skippedEvents, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getEventsPerSecond(), bricks, orders,
+                FixedPoint.toString(position.getPosition(), position.getSymbol().getSizePower()),
+                FixedPoint.toString(position.getNetPnl(), position.getAmountPower()));
+    }
+}
@@ -1,29 +1,72 @@
 package io.xtrd.trading;
 
+import io.xtrd.BatchAwareConsumer;
 import io.xtrd.EventProcessor;
 import io.xtrd.trading.events.MarketDataEvent;
 import io.xtrd.trading.events.PriceEvent;
+import io.xtrd.trading.events.ResubscribeEvent;
+import io.xtrd.trading.events.SequenceGapEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
-import java.util.Collections;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.List;
-import java.util.TreeMap;
 import java.util.function.Consumer;
 
-public class Book {
-    private TreeMap<BigDecimal, BigDecimal> bids = new TreeMap<> (Collections.reverseOrder());
-    private TreeMap<BigDecimal, BigDecimal> asks = new TreeMap<>();
+public class Book implements BookMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(Book.class);
+    //ticks of the symbol price power around the top of the book held in arrays
+    static final int WINDOW_TICKS = 1 << 16;
+    private final PriceLadder bids = new PriceLadder(true, WINDOW_TICKS);
+    private final PriceLadder asks = new PriceLadder(false, WINDOW_TICKS);
     private ConsumerType consumerType;
-    private BigDecimal lastSentPrice;
+    private boolean priceSent;
+    private long lastSentPrice;
+    private final Symbol symbol;
     private EventProcessor eventProcessor;
+    private boolean publishPerBatch;
+    private boolean changedInBatch;
+    //ticks of each side summed by DepthVwap
+    private int depthTicks = 1;
+    //smaller moves of the published price are not sent
+    private long minPriceChange = 1;
+    //set when the deltas stopped adding up, cleared by the next snapshot
+    private volatile boolean stale;
+    private volatile long staleSince;
+    private volatile long staleCount;
+    private volatile long staleMillis;
 
     public enum ConsumerType{
-        Avg, Bids, Asks
+        Avg, Bids, Asks, Microprice, WeightedMid, DepthVwap
     }
 
-    public Book(EventProcessor eventProcessor) {
+    public Book(Symbol symbol, EventProcessor eventProcessor) {
+        this.symbol = symbol;
         this.eventProcessor = eventProcessor;
-        eventProcessor.addConsumer(MarketDataEvent.class, (Consumer<MarketDataEvent>)marketDataEvent -> process(marketDataEvent.getMarketData()));
+        eventProcessor.addConsumer(MarketDataEvent.class, new BatchAwareConsumer<MarketDataEvent>() {
+            @Override
+            public void onEvent(MarketDataEvent marketDataEvent) {
+                if (marketDataEvent.getSymbol() == symbol) {
+                    process(marketDataEvent.getMarketData());
+                }
+            }
+
+            @Override
+            public void onEndOfBatch() {
+                if (changedInBatch) {
+                    changedInBatch = false;
+                    sendTOBToConsumer();
+                }
+            }
+        });
+        eventProcessor.addConsumer(SequenceGapEvent.class, (Consumer<SequenceGapEvent>) event -> {
+            if (event.getSymbol() == symbol) {
+                markStale("sequence gap, expected " + event.getExpected() + " received " + event.getReceived());
+            }
+        });
+        //a delta reaching the top of the book moves the published price, it can't be merged with the next one
+        eventProcessor.addConflationGuard(MarketDataEvent.class, marketDataEvent -> marketDataEvent.getSymbol() == symbol && touchesTOB(marketDataEvent.getMarketData()));
     }
 
     public ConsumerType getType(PriceSource priceSource) {
@@ -32,6 +75,12 @@ public class Book {
                 return ConsumerType.Asks;
             case TOB_BIDS:
                 return ConsumerType.Bids;
+            case MICROPRICE:
+                return ConsumerType.Microprice;
+            case WEIGHTED_MID:
+                return ConsumerType.WeightedMid;
+            case DEPTH_VWAP:
+                return ConsumerType.DepthVwap;
             default:
                 return ConsumerType.Avg;
         }
@@ -42,21 +91,124 @@ public class Book {
         this.consumerType = consumerType;
     }
 
+    public void setPublishPerBatch(boolean publishPerBatch) {
+        this.publishPerBatch = publishPerBatch;
+    }
+
+    //fixed point ticks of the symbol price power
+    public void setDepthTicks(int depthTicks) {
+        bids.setBandTicks(depthTicks);
+        asks.setBandTicks(depthTicks);
+        this.depthTicks = depthTicks;
+    }
+
+    public void setMinPriceChange(long minPriceChange) {
+        this.minPriceChange = Math.max(minPriceChange, 1);
+    }
+
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("io.xtrd:type=Book,name=" + ObjectName.quote(name)));
+        } catch (Exception e) {
+            logger.warn("Unable to register book MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isStale() {
+        return stale;
+    }
+
+    @Override
+    public long getStaleCount() {
+        return staleCount;
+    }
+
+    @Override
+    public long getStaleMillis() {
+        long result = staleMillis;
+        if (stale) {
+            result += eventProcessor.getClock().currentTimeMillis() - staleSince;
+        }
+        return result;
+    }
+
+    //stop publishing and ask for a snapshot, deltas are dropped until it comes
+    private void markStale(String reason) {
+        if (stale) {
+            return;
+        }
+        logger.warn("Book {} is stale: {}, requesting a snapshot", symbol, reason);
+        stale = true;
+        staleSince = eventProcessor.getClock().currentTimeMillis();
+        staleCount++;
+        changedInBatch = false;
+        eventProcessor.putEvent(new ResubscribeEvent(symbol));
+    }
+
     private void sendTOBToConsumer() {
-        BigDecimal newTOBPrice = null;
+        if (stale) {
+            return;
+        }
+        long newTOBPrice;
         if (consumerType == ConsumerType.Bids && !bids.isEmpty()) {
-            newTOBPrice = bids.firstKey();
+            newTOBPrice = bids.bestPrice();
         } else if (consumerType == ConsumerType.Asks && !asks.isEmpty()) {
-            newTOBPrice = asks.firstKey();
+            newTOBPrice = asks.bestPrice();
         } else if (!bids.isEmpty() && !asks.isEmpty()) {
-            newTOBPrice = bids.firstKey().add(asks.firstKey()).divide(BigDecimal.valueOf(2));
+            newTOBPrice = twoSidedPrice();
+        } else {
+            return;
+        }
+        if (!priceSent || Math.abs(newTOBPrice - lastSentPrice) >= minPriceChange) {
+            priceSent = true;
+            lastSentPrice = newTOBPrice;
+            eventProcessor.putEvent(new PriceEvent(symbol, newTOBPrice, eventProcessor.getClock().currentTimeMillis()));
+        }
+    }
+
+    //sizes and depth are kept by the ladders, nothing is walked here
+    private long twoSidedPrice() {
+        long bid = bids.bestPrice();
+        long ask = asks.bestPrice();
+        if (consumerType == ConsumerType.Microprice || consumerType == ConsumerType.WeightedMid) {
+            double bidSize = bids.bestSize();
+            double askSize = asks.bestSize();
+            if (bidSize + askSize > 0) {
+                //microprice leans to the side with less size left, the weighted mid to the side with more
+                return consumerType == ConsumerType.Microprice
+                        ? Math.round((bid * askSize + ask * bidSize) / (bidSize + askSize))
+                        : Math.round((bid * bidSize + ask * askSize) / (bidSize + askSize));
+            }
+        } else if (consumerType == ConsumerType.DepthVwap) {
+            double bidSize = bids.bandSize();
+            double askSize = asks.bandSize();
+            if (bidSize > 0 && askSize > 0) {
+                return Math.round((bids.bandPrice() * bidSize + asks.bandPrice() * askSize) / (bidSize + askSize));
+            }
         }
-        if (newTOBPrice != null) {
-            if (lastSentPrice == null || newTOBPrice.compareTo(lastSentPrice) != 0) {
-                lastSentPrice = newTOBPrice;
-                eventProcessor.putEvent(new PriceEvent(newTOBPrice));
+        //half a tick rounds up, prices stay on the symbol tick
+        return Math.floorDiv(bid + ask + 1, 2);
+    }
+
+    private boolean touchesTOB(List<MarketData> events) {
+        int depth = consumerType == ConsumerType.DepthVwap ? depthTicks : 1;
+        for (MarketData marketData : events) {
+            switch (marketData.getType()) {
+                case New:
+                case Update:
+                case Delete:
+                    if (marketData.getSide() == Side.Buy) {
+                        if (bids.reaches(marketData.getPrice(), depth)) return true;
+                    } else {
+                        if (asks.reaches(marketData.getPrice(), depth)) return true;
+                    }
+                    break;
+                default:
+                    return true;
             }
         }
+        return false;
     }
 
     private void process(List<MarketData> events) {
@@ -68,20 +220,41 @@ public class Book {
                  if (marketData.getSide() == Side.Buy) bids.put(marketData.getPrice(), marketData.getSize());
                  else if (marketData.getSide() == Side.Sell) asks.put(marketData.getPrice(), marketData.getSize());
              }
+             if (stale) {
+                 long duration = eventProcessor.getClock().currentTimeMillis() - staleSince;
+                 staleMillis += duration;
+                 stale = false;
+                 logger.info("Book {} recovered from a snapshot after {} ms", symbol, duration);
+             }
+         } else if (stale) {
+             return;
          } else if (events.get(0).getType() == MarketData.Type.Reset) {
              bids.clear();
              asks.clear();
          } else {
              //update book
              for (MarketData marketData : events) {
-                 updateSide(marketData);
+                 if (!updateSide(marketData)) {
+                     markStale("delete of unknown " + marketData.getSide() + " level " + marketData.getPrice());
+                     return;
+                 }
+             }
+             //only deltas can leave a book crossed, a snapshot is what the venue has, locked books are valid
+             if (!bids.isEmpty() && !asks.isEmpty() && bids.bestPrice() > asks.bestPrice()) {
+                 markStale("crossed, bid " + bids.bestPrice() + " ask " + asks.bestPrice());
+                 return;
              }
          }
-         sendTOBToConsumer();
+         if (publishPerBatch) {
+             changedInBatch = true;
+         } else {
+             sendTOBToConsumer();
+         }
      }
 
-     private void updateSide(MarketData marketData) {
-         TreeMap<BigDecimal, BigDecimal> workSide;
+     //false when the delta does not match the book
+     private boolean updateSide(MarketData marketData) {
+         PriceLadder workSide;
          if (marketData.getSide()==Side.Buy) {
              workSide = bids;
          } else {
@@ -95,7 +268,8 @@ public class Book {
                  workSide.put(marketData.getPrice(), marketData.getSize());
                  break;
              case Delete:
-                 workSide.remove(marketData.getPrice());
+                 return workSide.remove(marketData.getPrice());
          }
+         return true;
      }
 }
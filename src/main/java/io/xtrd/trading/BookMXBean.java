@@ -0,0 +1,13 @@
+package io.xtrd.trading;
+
+public interface BookMXBean {
+
+    //deltas are dropped and no price is published until the next snapshot
+    boolean isStale();
+
+    //times the book was found inconsistent
+    long getStaleCount();
+
+    //time spent stale, including the current period
+    long getStaleMillis();
+}
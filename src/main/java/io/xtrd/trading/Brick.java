@@ -2,34 +2,53 @@ package io.xtrd.trading;
 
 import io.xtrd.trading.events.IEvent;
 
-import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
 public class Brick implements IEvent {
     private final static SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
+    //index of the brick size in the renko model
+    private int series;
     private long time;
-    private BigDecimal open;
-    private BigDecimal high;
-    private BigDecimal low;
-    private BigDecimal close;
+    //fixed point, scaled by the symbol price power
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+
+    public int getSeries() {
+        return series;
+    }
 
     public long getTime() {
         return time;
     }
 
-    public BigDecimal getOpen() {
+    public long getOpen() {
         return open;
     }
 
-    public BigDecimal getClose() {
+    public long getClose() {
         return close;
     }
 
-    public Brick(long time, BigDecimal open, BigDecimal close) {
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public Brick(long time, long open, long close) {
+        this(0, time, open, close);
+    }
+
+    public Brick(int series, long time, long open, long close) {
+        this.series = series;
         this.time = time;
-        low = open.compareTo(close)>=0 ? close : open;
-        high = open.compareTo(close)>=0 ? open : close;
+        low = Math.min(open, close);
+        high = Math.max(open, close);
         this.open = open;
         this.close = close;
     }
@@ -37,7 +56,8 @@ public class Brick implements IEvent {
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("Brick{");
-        sb.append("time=").append(formatter.format(new Date(time)));
+        sb.append("series=").append(series);
+        sb.append(", time=").append(formatter.format(new Date(time)));
         sb.append(", open=").append(open);
         sb.append(", close=").append(close);
         sb.append('}');
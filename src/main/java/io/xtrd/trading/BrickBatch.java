@@ -0,0 +1,46 @@
+package io.xtrd.trading;
+
+import io.xtrd.trading.events.IEvent;
+
+import java.util.Arrays;
+
+/**
+ * Bricks of one series formed by one price, oldest first. A gap of several brick sizes is published as a
+ * single event, a gap too wide for one event keeps its last bricks.
+ */
+public class BrickBatch implements IEvent {
+    private final Symbol symbol;
+    private final int series;
+    private final Brick[] bricks;
+
+    BrickBatch(Symbol symbol, int series, Brick[] bricks) {
+        this.symbol = symbol;
+        this.series = series;
+        this.bricks = bricks;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public int getSeries() {
+        return series;
+    }
+
+    public int size() {
+        return bricks.length;
+    }
+
+    public Brick get(int index) {
+        return bricks[index];
+    }
+
+    public Brick getLast() {
+        return bricks[bricks.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "BrickBatch{symbol=" + symbol + ", series=" + series + ", bricks=" + Arrays.toString(bricks) + '}';
+    }
+}
@@ -10,8 +10,14 @@ public class ExecutionReport implements IEvent {
     private final static SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
     private String orderId;
     private String clOrdID;
+    private String symbol;
+    private Side side;
     private OrderStatus orderStatus;
     private BigDecimal lastQty;
+    //price of the last fill, null when nothing was filled
+    private BigDecimal lastPx;
+    //commission of the last fill in the quote currency, null when none
+    private BigDecimal commission;
     private BigDecimal cumQty;
     private BigDecimal leavesQty;
     private long transactionTime;
@@ -33,6 +39,14 @@ public class ExecutionReport implements IEvent {
         return clOrdID;
     }
 
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
     public OrderStatus getOrderStatus() {
         return orderStatus;
     }
@@ -41,6 +55,14 @@ public class ExecutionReport implements IEvent {
         return lastQty;
     }
 
+    public BigDecimal getLastPx() {
+        return lastPx;
+    }
+
+    public BigDecimal getCommission() {
+        return commission;
+    }
+
     public BigDecimal getCumQty() {
         return cumQty;
     }
@@ -53,14 +75,34 @@ public class ExecutionReport implements IEvent {
         return transactionTime;
     }
 
+    public String getOrdRejReason() {
+        return ordRejReason;
+    }
+
+    public String getText() {
+        return text;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("ExecutionReport{");
         sb.append("orderId='").append(orderId).append('\'');
         sb.append(", clOrdID='").append(clOrdID).append('\'');
+        if (symbol != null) {
+            sb.append(", symbol=").append(symbol);
+        }
+        if (side != null) {
+            sb.append(", side=").append(side);
+        }
         sb.append(", transactionTime=").append(formatter.format(new Date(transactionTime)));
         sb.append(", orderStatus=").append(orderStatus);
         sb.append(", lastQty=").append(lastQty);
+        if (lastPx != null) {
+            sb.append(", lastPx=").append(lastPx);
+        }
+        if (commission != null) {
+            sb.append(", commission=").append(commission);
+        }
         sb.append(", cumQty=").append(cumQty);
         sb.append(", leavesQty=").append(leavesQty);
         if (ordRejReason != null) {
@@ -78,6 +120,7 @@ public class ExecutionReport implements IEvent {
         PARTIALLY_FILLED('1'),
         FILLED('2'),
         CANCELED('4'),
+        REPLACED('5'),
         REJECTED('8'),
         PENDING_NEW('A'),
         UNDEFINED('*');
@@ -98,6 +141,8 @@ public class ExecutionReport implements IEvent {
                     return FILLED;
                 case '4':
                     return CANCELED;
+                case '5':
+                    return REPLACED;
                 case '8':
                     return REJECTED;
                 case 'A':
@@ -127,6 +172,26 @@ public class ExecutionReport implements IEvent {
             return this;
         }
 
+        public Builder setSymbol(String symbol) {
+            ExecutionReport.this.symbol = symbol;
+            return this;
+        }
+
+        public Builder setSide(Side side) {
+            ExecutionReport.this.side = side;
+            return this;
+        }
+
+        public Builder setLastPx(BigDecimal lastPx) {
+            ExecutionReport.this.lastPx = lastPx;
+            return this;
+        }
+
+        public Builder setCommission(BigDecimal commission) {
+            ExecutionReport.this.commission = commission;
+            return this;
+        }
+
         public Builder setOrderStatus(OrderStatus orderStatus) {
             ExecutionReport.this.orderStatus = orderStatus;
             return this;
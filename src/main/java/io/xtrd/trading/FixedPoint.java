@@ -0,0 +1,66 @@
+package io.xtrd.trading;
+
+import java.math.BigDecimal;
+
+/**
+ * Prices and sizes are longs scaled by the symbol powers: 9001.25 with price power 2 is 900125. They are
+ * converted from and to decimals only where they enter or leave the application, FIX and the chart.
+ */
+public final class FixedPoint {
+
+    private FixedPoint() {
+    }
+
+    //parses a plain decimal without allocating, digits beyond power must be zeros
+    public static long parse(CharSequence text, int power) {
+        return parse(text, 0, text.length(), power);
+    }
+
+    //the same for the characters from start to end, a field value inside a raw message
+    public static long parse(CharSequence text, int start, int end, int power) {
+        int index = start;
+        boolean negative = false;
+        if (end > index && (text.charAt(index) == '-' || text.charAt(index) == '+')) {
+            negative = text.charAt(index) == '-';
+            index++;
+        }
+        if (index == end) {
+            throw new NumberFormatException("Not a decimal: " + text.subSequence(start, end));
+        }
+        long result = 0;
+        int fractionDigits = -1;
+        for (; index < end; index++) {
+            char c = text.charAt(index);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not a decimal: " + text.subSequence(start, end));
+            }
+            if (fractionDigits >= 0 && fractionDigits++ >= power) {
+                if (c != '0') {
+                    throw new ArithmeticException("Rounding necessary: " + text.subSequence(start, end) + " with power " + power);
+                }
+                continue;
+            }
+            result = Math.addExact(Math.multiplyExact(result, 10), c - '0');
+        }
+        for (int i = Math.max(fractionDigits, 0); i < power; i++) {
+            result = Math.multiplyExact(result, 10);
+        }
+        return negative ? -result : result;
+    }
+
+    public static long fromBigDecimal(BigDecimal value, int power) {
+        return value.setScale(power).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long value, int power) {
+        return BigDecimal.valueOf(value, power);
+    }
+
+    public static String toString(long value, int power) {
+        return toBigDecimal(value, power).toPlainString();
+    }
+}
@@ -1,10 +1,9 @@
 package io.xtrd.trading;
 
-import java.math.BigDecimal;
-
 public class MarketData {
-    private BigDecimal price;
-    private BigDecimal size;
+    //fixed point, scaled by the symbol price and size powers
+    private long price;
+    private long size;
     private Type type;
     private Side side;
 
@@ -14,18 +13,18 @@ public class MarketData {
 
     }
 
-    public MarketData(BigDecimal price, BigDecimal size, Type type, Side side) {
+    public MarketData(long price, long size, Type type, Side side) {
         this.price = price;
         this.size = size;
         this.type = type;
         this.side = side;
     }
 
-    public BigDecimal getPrice() {
+    public long getPrice() {
         return price;
     }
 
-    public BigDecimal getSize() {
+    public long getSize() {
         return size;
     }
 
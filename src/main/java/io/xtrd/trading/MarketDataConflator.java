@@ -0,0 +1,58 @@
+package io.xtrd.trading;
+
+import io.xtrd.Conflator;
+import io.xtrd.trading.events.MarketDataEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MarketDataConflator implements Conflator<MarketDataEvent> {
+
+    @Override
+    public MarketDataEvent conflate(MarketDataEvent older, MarketDataEvent newer) {
+        if (older.getSymbol() != newer.getSymbol()) {
+            return null;
+        }
+        if (isFullRefresh(newer)) {
+            //the whole book is replaced, older deltas don't matter
+            return newer;
+        }
+        if (isFullRefresh(older)) {
+            //book applies a snapshot as a whole, deltas can't be mixed into it
+            return null;
+        }
+        //net delta, the last action on a price level wins, a level added and deleted again is left out
+        Map<Long, MarketData> bids = new LinkedHashMap<>();
+        Map<Long, MarketData> asks = new LinkedHashMap<>();
+        addLevels(older.getMarketData(), bids, asks);
+        addLevels(newer.getMarketData(), bids, asks);
+        List<MarketData> result = new ArrayList<>(bids.size() + asks.size());
+        result.addAll(bids.values());
+        result.addAll(asks.values());
+        if (result.isEmpty()) {
+            //nothing left to apply, the book can't take an empty delta
+            return null;
+        }
+        return new MarketDataEvent(newer.getSymbol(), result);
+    }
+
+    private boolean isFullRefresh(MarketDataEvent event) {
+        MarketData.Type type = event.getMarketData().get(0).getType();
+        return type == MarketData.Type.Snapshot || type == MarketData.Type.Reset;
+    }
+
+    private void addLevels(List<MarketData> levels, Map<Long, MarketData> bids, Map<Long, MarketData> asks) {
+        for (MarketData marketData : levels) {
+            Map<Long, MarketData> side = marketData.getSide() == Side.Buy ? bids : asks;
+            //re-insert so the level keeps the position of its latest change
+            MarketData previous = side.remove(marketData.getPrice());
+            if (previous != null && previous.getType() == MarketData.Type.New && marketData.getType() == MarketData.Type.Delete) {
+                //the book never had the level, its delete would be of an unknown level
+                continue;
+            }
+            side.put(marketData.getPrice(), marketData);
+        }
+    }
+}
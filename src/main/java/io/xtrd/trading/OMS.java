@@ -3,45 +3,52 @@ package io.xtrd.trading;
 import io.xtrd.EventProcessor;
 import io.xtrd.trading.events.OrderCommandEvent;
 import io.xtrd.trading.events.OrderDrawEvent;
+import io.xtrd.trading.events.OrderMassCancelEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class OMS {
     private static final Logger LOGGER = LoggerFactory.getLogger(OMS.class);
+    //executed orders kept after they leave the working orders
+    private static final int ARCHIVE_SIZE = 1024;
     private final AtomicInteger orderId = new AtomicInteger(1);
     private final AtomicInteger positionHeldCounter = new AtomicInteger(0);
     private final int maxPositionHeld;
-    private final List<Order> executedOrders;
     private final List<Order> positionHeldOrders;
-    private final HashMap<String, Order> limitOrders;
-    private BigDecimal cumulativeSize;
+    private final WorkingOrders limitOrders;
+    //reused by the range walks over the working orders
+    private final List<Order> scratch = new ArrayList<>();
+    //fixed point, scaled by the symbol size power
+    private long cumulativeSize;
     private final EventProcessor eventProcessor;
     private final Symbol symbol;
+    private final int series;
     private Order lastLimitOrder;
+    //only when no other OMS trades the symbol, a mass cancel hits all its orders on the side
+    private boolean massCancel;
+    //null when orders are not checked
+    private RiskGate riskGate;
 
     public OMS(
             Symbol symbol,
-            BigDecimal renkoBrickSize,
-            BigDecimal orderSize,
+            int series,
+            long orderSize,
             int maxPositionHeld,
             EventProcessor eventProcessor
     ) {
-        this.executedOrders = new ArrayList<>();
         this.positionHeldOrders = new ArrayList<>();
-        this.limitOrders = new HashMap<>();
-        this.cumulativeSize = BigDecimal.ZERO;
+        this.limitOrders = new WorkingOrders(ARCHIVE_SIZE);
+        this.cumulativeSize = 0;
         this.maxPositionHeld = maxPositionHeld;
         this.symbol = symbol;
+        this.series = series;
         this.eventProcessor = eventProcessor;
-        eventProcessor.addConsumer(Brick.class, getRenkoBrickConsumer(renkoBrickSize, orderSize));
+        eventProcessor.addConsumer(BrickBatch.class, getRenkoBrickConsumer(orderSize));
         eventProcessor.addConsumer(ExecutionReport.class, getExecutionReportConsumer());
     }
 
@@ -51,112 +58,111 @@ public class OMS {
             if (order != null) {
                 order.setOrderID(executionReport.getOrderId());
                 if (executionReport.getOrderStatus() == ExecutionReport.OrderStatus.FILLED) {
+                    release(order);
                     order.setExecuteTime(executionReport.getTransactionTime());
                     if (order.getLinkedExecBrick() != null) {
                         //can be removed from limitsOrder
-                        limitOrders.remove(order.getClOrdID());
-                        executedOrders.add(order);
+                        limitOrders.archive(order);
                     }
                     if (order.getSide() == Side.Sell) {
-                        cumulativeSize = cumulativeSize.subtract(order.getSize());
+                        cumulativeSize -= order.getSize();
                     } else {
                         positionHeldOrders.add(order);
-                        cumulativeSize = cumulativeSize.add(order.getSize());
+                        cumulativeSize += order.getSize();
                     }
                     eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.fill, order));
                 } else if (executionReport.getOrderStatus() == ExecutionReport.OrderStatus.CANCELED) {
+                    release(order);
                     limitOrders.remove(order.getClOrdID());
                     eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.delete, order));
+                } else if (executionReport.getOrderStatus() == ExecutionReport.OrderStatus.REPLACED) {
+                    order.setCreateTime(executionReport.getTransactionTime());
+                    Order replaced = limitOrders.remove(order.getOrigClOrdID());
+                    if (replaced != null) {
+                        release(replaced);
+                        eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.delete, replaced));
+                    }
+                    eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.add, order));
                 } else if (executionReport.getOrderStatus() == ExecutionReport.OrderStatus.NEW) {
                     order.setCreateTime(executionReport.getTransactionTime());
                     eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.add, order));
                 } else if (executionReport.getOrderStatus() == ExecutionReport.OrderStatus.REJECTED) {
+                    release(order);
                     limitOrders.remove(order.getClOrdID());
                 }
             }
         };
     }
 
-    private Consumer<Brick> getRenkoBrickConsumer(BigDecimal renkoBrickSize, BigDecimal orderSize) {
-        return brick -> {
-            if (brick.getOpen().compareTo(brick.getClose()) < 0) {
-                processBuyRisingBrick(renkoBrickSize, orderSize, brick);
-            } else {
-                processSellFallingBrick(renkoBrickSize, orderSize, brick);
+    private Consumer<BrickBatch> getRenkoBrickConsumer(long orderSize) {
+        return bricks -> {
+            //one OMS per brick size
+            if (bricks.getSeries() != series || !bricks.getSymbol().getName().equals(symbol.getName())) {
+                return;
+            }
+            for (int i = 0; i < bricks.size(); i++) {
+                Brick brick = bricks.get(i);
+                //box sizes of adaptive renko change from brick to brick
+                long renkoBrickSize = brick.getHigh() - brick.getLow();
+                if (brick.getOpen() < brick.getClose()) {
+                    processBuyRisingBrick(renkoBrickSize, orderSize, brick);
+                } else {
+                    processSellFallingBrick(renkoBrickSize, orderSize, brick);
+                }
             }
         };
     }
 
-    private void processBuyRisingBrick(BigDecimal renkoBrickSize, BigDecimal orderSize, Brick brick) {
+    private void processBuyRisingBrick(long renkoBrickSize, long orderSize, Brick brick) {
         if (positionHeldCounter.incrementAndGet() <= maxPositionHeld) {
             //brick closed down, close sell limit orders, open new buy limit order
             closeLimitOrders(Side.Sell);
             //link limit order to brick time
-            Iterator<Order> iterator = limitOrders.values().iterator();
-            while (iterator.hasNext()) {
-                Order order = iterator.next();
-                if (order.getSide() == Side.Buy && order.getPrice().compareTo(brick.getClose()) >= 0 && order.getLinkedExecBrick() == null) {
-                    order.setLinkedExecBrick(brick);
-                    if (order.getExecuteTime() != 0) {
-                        //filled, should be redrawn and removed from limit orders
-                        iterator.remove();
-                        executedOrders.add(order);
-                        eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.fill, order));
-                    }
+            scratch.clear();
+            limitOrders.collectAtOrAbove(Side.Buy, brick.getClose(), scratch);
+            linkExecBrick(brick);
+            if (lastLimitOrder == null || brick.getClose() > lastLimitOrder.getPrice()) {
+                long newOrderSize = orderSize;
+                if (cumulativeSize < 0) {
+                    newOrderSize = -cumulativeSize;
                 }
-            }
-            if (lastLimitOrder == null || brick.getClose().compareTo(lastLimitOrder.getPrice()) > 0) {
-                BigDecimal newOrderSize = orderSize;
-                if (cumulativeSize.compareTo(BigDecimal.ZERO) < 0) {
-                    newOrderSize = cumulativeSize.negate();
-                }
-                Order order = new Order(symbol, getNextOrderId(), Side.Buy, brick.getClose().add(renkoBrickSize), newOrderSize);
+                Order order = new Order(symbol, getNextOrderId(), Side.Buy, brick.getClose() + renkoBrickSize, newOrderSize);
                 order.setLinkedLimitBrick(brick);
-                limitOrders.put(order.getClOrdID(), order);
-                lastLimitOrder = order;
-                eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, order));
+                limitOrders.add(order);
+                placeLimitOrder(order);
             }
         } else {
             LOGGER.info("Brick will be ignored");
         }
     }
 
-    private void processSellFallingBrick(BigDecimal renkoBrickSize, BigDecimal orderSize, Brick brick) {
+    private void processSellFallingBrick(long renkoBrickSize, long orderSize, Brick brick) {
 
         //brick closed up, close buy limit orders, open new sell limit order
         closeLimitOrders(Side.Buy);
         //link limit order to brick time
-        Iterator<Order> iterator = limitOrders.values().iterator();
-        while (iterator.hasNext()) {
-            Order order = iterator.next();
-            if (order.getSide() == Side.Sell && order.getPrice().compareTo(brick.getClose()) <= 0 && order.getLinkedExecBrick() == null) {
-                order.setLinkedExecBrick(brick);
-                if (order.getExecuteTime() != 0) {
-                    //filled, should be redrawn and removed from limit orders
-                    iterator.remove();
-                    executedOrders.add(order);
-                    eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.fill, order));
-                }
-            }
-        }
-        if (lastLimitOrder == null || brick.getClose().compareTo(lastLimitOrder.getPrice()) < 0) {
-            BigDecimal newOrderSize = orderSize;
-            if (cumulativeSize.compareTo(BigDecimal.ZERO) > 0) {
+        scratch.clear();
+        limitOrders.collectAtOrBelow(Side.Sell, brick.getClose(), scratch);
+        linkExecBrick(brick);
+        if (lastLimitOrder == null || brick.getClose() < lastLimitOrder.getPrice()) {
+            long newOrderSize = orderSize;
+            if (cumulativeSize > 0) {
                 newOrderSize = cumulativeSize;
             }
-            Order order = new Order(symbol, getNextOrderId(), Side.Sell, brick.getClose().add(renkoBrickSize), newOrderSize);
+            Order order = new Order(symbol, getNextOrderId(), Side.Sell, brick.getClose() + renkoBrickSize, newOrderSize);
             order.setLinkedLimitBrick(brick);
-            limitOrders.put(order.getClOrdID(), order);
-            lastLimitOrder = order;
-            eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, order));
+            limitOrders.add(order);
+            placeLimitOrder(order);
         }
 
         if (!positionHeldOrders.isEmpty()) {
             positionHeldOrders.forEach(order -> {
-                Order closeOrder = new Order(symbol, getNextOrderId(), Side.Sell, brick.getClose().add(renkoBrickSize), order.getSize());
+                Order closeOrder = new Order(symbol, getNextOrderId(), Side.Sell, brick.getClose() + renkoBrickSize, order.getSize());
                 closeOrder.setLinkedLimitBrick(brick);
-                limitOrders.put(closeOrder.getClOrdID(), order);
-                eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, closeOrder));
+                limitOrders.add(closeOrder);
+                if (accept(closeOrder)) {
+                    eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, closeOrder));
+                }
                 closeOrder.setLinkedExecBrick(brick);
             });
 
@@ -166,18 +172,64 @@ public class OMS {
 
     }
 
+    //the orders in scratch were reached by the brick
+    private void linkExecBrick(Brick brick) {
+        for (Order order : scratch) {
+            if (order.getLinkedExecBrick() == null) {
+                order.setLinkedExecBrick(brick);
+                if (order.getExecuteTime() != 0) {
+                    //filled, should be redrawn and removed from limit orders
+                    limitOrders.archive(order);
+                    eventProcessor.putEvent(new OrderDrawEvent(OrderOperation.fill, order));
+                }
+            }
+        }
+    }
+
+    //earlier orders of the side keep resting, they are cleared when a brick turns the other way
+    private void placeLimitOrder(Order order) {
+        lastLimitOrder = order;
+        if (accept(order)) {
+            eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, order));
+        }
+    }
+
     private void closeLimitOrders(Side side) {
         LOGGER.info("Fire order command event, Side={}", side);
-        Iterator<Order> iterator = limitOrders.values().iterator();
-        while (iterator.hasNext()) {
-            Order order = iterator.next();
-            if (order.getSide() == side) {
-                eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.delete, order));
-            }
+        if (massCancel && limitOrders.count(side) > 1) {
+            //the orders are removed by their canceled execution reports
+            eventProcessor.putEvent(new OrderMassCancelEvent(symbol, side, "M".concat(getNextOrderId())));
+            return;
         }
+        scratch.clear();
+        limitOrders.collect(side, scratch);
+        for (Order order : scratch) {
+            eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.delete, order));
+        }
+    }
+
+    //a rejected order is removed by its execution report
+    private boolean accept(Order order) {
+        return riskGate == null || riskGate.accept(order);
+    }
+
+    private void release(Order order) {
+        if (riskGate != null) {
+            riskGate.release(order);
+        }
+    }
+
+    public void setRiskGate(RiskGate riskGate) {
+        this.riskGate = riskGate;
+    }
+
+    public void setMassCancel(boolean massCancel) {
+        this.massCancel = massCancel;
     }
 
+    //client order ids stay unique when several series trade in one process
     private String getNextOrderId() {
-        return String.valueOf(orderId.getAndIncrement());
+        int id = orderId.getAndIncrement();
+        return series == 0 ? String.valueOf(id) : series + "-" + id;
     }
 }
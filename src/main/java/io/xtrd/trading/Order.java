@@ -1,6 +1,5 @@
 package io.xtrd.trading;
 
-import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Objects;
@@ -9,17 +8,22 @@ public class Order {
     private final static SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss.SSS");
     private String clOrdID;
     private String orderID;
+    //client order id of the order this one replaces
+    private String origClOrdID;
     private long createTime;
     private long executeTime;
     private Side side;
-    private BigDecimal price;
-    private BigDecimal size;
+    //fixed point, scaled by the symbol price and size powers
+    private long price;
+    private long size;
     private Symbol symbol;
     private Brick linkedLimitBrick;
     private Brick linkedExecBrick;
+    //counted among the open orders of the risk gate
+    private boolean riskCounted;
 
 
-    public Order(Symbol symbol, String clOrdID, Side side, BigDecimal price, BigDecimal size) {
+    public Order(Symbol symbol, String clOrdID, Side side, long price, long size) {
         this.symbol = symbol;
         this.side = side;
         this.price = price;
@@ -63,6 +67,22 @@ public class Order {
         this.orderID = orderID;
     }
 
+    public String getOrigClOrdID() {
+        return origClOrdID;
+    }
+
+    public void setOrigClOrdID(String origClOrdID) {
+        this.origClOrdID = origClOrdID;
+    }
+
+    boolean isRiskCounted() {
+        return riskCounted;
+    }
+
+    void setRiskCounted(boolean riskCounted) {
+        this.riskCounted = riskCounted;
+    }
+
     public Symbol getSymbol() {
         return symbol;
     }
@@ -83,15 +103,15 @@ public class Order {
         return side;
     }
 
-    public BigDecimal getPrice() {
+    public long getPrice() {
         return price;
     }
 
-    public void setPrice(BigDecimal price) {
+    public void setPrice(long price) {
         this.price = price;
     }
 
-    public BigDecimal getSize() {
+    public long getSize() {
         return size;
     }
 
@@ -102,8 +122,8 @@ public class Order {
         Order order = (Order) o;
         return clOrdID.equals(order.clOrdID) &&
                 side == order.side &&
-                price.equals(order.price) &&
-                size.equals(order.size) &&
+                price == order.price &&
+                size == order.size &&
                 symbol.equals(order.symbol);
     }
 
@@ -125,8 +145,8 @@ public class Order {
             sb.append(", executeTime=").append(formatter.format(new Date(executeTime)));
         }
         sb.append(", side=").append(side);
-        sb.append(", price=").append(price);
-        sb.append(", size=").append(size);
+        sb.append(", price=").append(FixedPoint.toString(price, symbol.getPricePower()));
+        sb.append(", size=").append(FixedPoint.toString(size, symbol.getSizePower()));
         sb.append(", linked limit renko=").append(linkedLimitBrick);
         sb.append(", linked exec renko=").append(linkedExecBrick);
         sb.append('}');
@@ -149,10 +169,10 @@ public class Order {
             }
         }
         sb.append(" (");
-        sb.append(size);
+        sb.append(FixedPoint.toString(size, symbol.getSizePower()));
         sb.append(")");
         sb.append("<br>");
-        sb.append(price);
+        sb.append(FixedPoint.toString(price, symbol.getPricePower()));
         return sb.toString();
     }
 }
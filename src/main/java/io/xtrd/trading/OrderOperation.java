@@ -1,5 +1,5 @@
 package io.xtrd.trading;
 
 public enum OrderOperation {
-    add, delete, fill
+    add, delete, fill, replace
 }
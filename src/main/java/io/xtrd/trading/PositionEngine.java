@@ -0,0 +1,177 @@
+package io.xtrd.trading;
+
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.events.PriceEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.function.Consumer;
+
+/**
+ * Position, average price, realized and unrealized PnL and fees of one symbol, updated by the fills of the
+ * execution reports, partial ones included, and marked to every price. Each fill and price is O(1) on a few
+ * longs, nothing is allocated past reading the decimals of the report. The amounts are fixed point in the
+ * quote currency, scaled by the price and size powers together. A fill whose amounts do not fit a long is
+ * logged and not applied.
+ * <p>
+ * Fills and prices are consumed on one lane. Snapshots can be taken from any thread, a version that is odd
+ * while a fill is applied makes them consistent.
+ */
+public class PositionEngine implements PositionEngineMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(PositionEngine.class);
+    private final Symbol symbol;
+    private final int amountPower;
+    private volatile long version;
+    private volatile long position;
+    //what the open position cost, negative when short
+    private volatile long cost;
+    private volatile long realizedPnl;
+    private volatile long fees;
+    private volatile long fills;
+    private volatile long markPrice;
+
+    public PositionEngine(Symbol symbol, EventProcessor eventProcessor) {
+        this.symbol = symbol;
+        this.amountPower = symbol.getPricePower() + symbol.getSizePower();
+        eventProcessor.addConsumer(ExecutionReport.class, getExecutionReportConsumer());
+        eventProcessor.addConsumer(PriceEvent.class, getPriceConsumer());
+    }
+
+    private Consumer<ExecutionReport> getExecutionReportConsumer() {
+        return report -> {
+            if ((report.getOrderStatus() != ExecutionReport.OrderStatus.FILLED && report.getOrderStatus() != ExecutionReport.OrderStatus.PARTIALLY_FILLED)
+                    || report.getLastQty() == null || report.getLastQty().signum() <= 0 || report.getLastPx() == null
+                    //reports carry the symbol name, they are compared once per fill and not per price
+                    || report.getSide() == null || !symbol.getName().equals(report.getSymbol())) {
+                return;
+            }
+            BigDecimal commission = report.getCommission();
+            try {
+                fill(report.getSide(),
+                        FixedPoint.fromBigDecimal(report.getLastQty(), symbol.getSizePower()),
+                        FixedPoint.fromBigDecimal(report.getLastPx(), symbol.getPricePower()),
+                        commission == null ? 0 : FixedPoint.fromBigDecimal(commission.setScale(amountPower, RoundingMode.HALF_EVEN), amountPower));
+            } catch (ArithmeticException e) {
+                logger.error("Fill of order {} is not applied, {} at {} overflows the position amounts", report.getClOrdID(), report.getLastQty(), report.getLastPx());
+            }
+        };
+    }
+
+    private Consumer<PriceEvent> getPriceConsumer() {
+        return priceEvent -> {
+            //price events carry the shared symbol instance
+            if (priceEvent.getSymbol() == symbol) {
+                markPrice = priceEvent.getPrice();
+            }
+        };
+    }
+
+    /**
+     * A fill against the position closes it first at the average price, the rest opens the other way at the
+     * fill price. Throws ArithmeticException before anything is changed when an amount overflows.
+     */
+    void fill(Side side, long quantity, long price, long fee) {
+        long signed = side == Side.Buy ? quantity : -quantity;
+        long position = this.position;
+        long cost = this.cost;
+        long realized = realizedPnl;
+        if (position == 0 || (position > 0) == (signed > 0)) {
+            position = Math.addExact(position, signed);
+            cost = Math.addExact(cost, Math.multiplyExact(signed, price));
+        } else {
+            long open = Math.abs(position);
+            long closed = Math.min(quantity, open);
+            //the part closed at the average price, rounded when the position is closed partly
+            long closedCost = closed == open ? cost : Math.round((double) cost * closed / open);
+            long direction = position > 0 ? 1 : -1;
+            realized = Math.addExact(realized, Math.subtractExact(Math.multiplyExact(direction * closed, price), closedCost));
+            cost -= closedCost;
+            position -= direction * closed;
+            if (quantity > closed) {
+                position = (quantity - closed) * -direction;
+                cost = Math.multiplyExact(position, price);
+            }
+        }
+        version++;
+        this.position = position;
+        this.cost = cost;
+        realizedPnl = realized;
+        fees += fee;
+        fills++;
+        version++;
+    }
+
+    //filled position, read on the lane of the fills
+    long position() {
+        return position;
+    }
+
+    public PositionSnapshot getSnapshot() {
+        long version;
+        long position;
+        long cost;
+        long realized;
+        long fees;
+        long fills;
+        do {
+            version = this.version;
+            position = this.position;
+            cost = this.cost;
+            realized = realizedPnl;
+            fees = this.fees;
+            fills = this.fills;
+        } while ((version & 1) != 0 || version != this.version);
+        long markPrice = this.markPrice;
+        long averagePrice = position == 0 ? 0 : Math.round((double) cost / position);
+        long unrealized = markPrice == 0 ? 0 : position * markPrice - cost;
+        return new PositionSnapshot(symbol, position, averagePrice, markPrice, realized, unrealized, fees,
+                Math.abs(position) * markPrice, fills);
+    }
+
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("io.xtrd:type=Position,name=" + ObjectName.quote(name)));
+        } catch (Exception e) {
+            logger.warn("Unable to register position MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public double getPosition() {
+        return FixedPoint.toBigDecimal(getSnapshot().getPosition(), symbol.getSizePower()).doubleValue();
+    }
+
+    @Override
+    public double getAveragePrice() {
+        return FixedPoint.toBigDecimal(getSnapshot().getAveragePrice(), symbol.getPricePower()).doubleValue();
+    }
+
+    @Override
+    public double getRealizedPnl() {
+        return FixedPoint.toBigDecimal(getSnapshot().getRealizedPnl(), amountPower).doubleValue();
+    }
+
+    @Override
+    public double getUnrealizedPnl() {
+        return FixedPoint.toBigDecimal(getSnapshot().getUnrealizedPnl(), amountPower).doubleValue();
+    }
+
+    @Override
+    public double getFees() {
+        return FixedPoint.toBigDecimal(getSnapshot().getFees(), amountPower).doubleValue();
+    }
+
+    @Override
+    public double getExposure() {
+        return FixedPoint.toBigDecimal(getSnapshot().getExposure(), amountPower).doubleValue();
+    }
+
+    @Override
+    public long getFills() {
+        return getSnapshot().getFills();
+    }
+}
@@ -0,0 +1,21 @@
+package io.xtrd.trading;
+
+//amounts in the quote currency
+public interface PositionEngineMXBean {
+
+    //negative when short
+    double getPosition();
+
+    double getAveragePrice();
+
+    double getRealizedPnl();
+
+    //marked to the last price
+    double getUnrealizedPnl();
+
+    double getFees();
+
+    double getExposure();
+
+    long getFills();
+}
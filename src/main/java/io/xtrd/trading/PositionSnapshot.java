@@ -0,0 +1,94 @@
+package io.xtrd.trading;
+
+/**
+ * Position of a symbol at one moment. Position is fixed point of the symbol size power, average and mark prices
+ * of the price power, the amounts are in the quote currency scaled by both powers.
+ */
+public class PositionSnapshot {
+    private final Symbol symbol;
+    private final long position;
+    private final long averagePrice;
+    private final long markPrice;
+    private final long realizedPnl;
+    private final long unrealizedPnl;
+    private final long fees;
+    private final long exposure;
+    private final long fills;
+
+    public PositionSnapshot(Symbol symbol, long position, long averagePrice, long markPrice, long realizedPnl, long unrealizedPnl,
+                            long fees, long exposure, long fills) {
+        this.symbol = symbol;
+        this.position = position;
+        this.averagePrice = averagePrice;
+        this.markPrice = markPrice;
+        this.realizedPnl = realizedPnl;
+        this.unrealizedPnl = unrealizedPnl;
+        this.fees = fees;
+        this.exposure = exposure;
+        this.fills = fills;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    //0 when flat
+    public long getAveragePrice() {
+        return averagePrice;
+    }
+
+    //0 before the first price
+    public long getMarkPrice() {
+        return markPrice;
+    }
+
+    public long getRealizedPnl() {
+        return realizedPnl;
+    }
+
+    public long getUnrealizedPnl() {
+        return unrealizedPnl;
+    }
+
+    public long getFees() {
+        return fees;
+    }
+
+    //realized and unrealized less fees
+    public long getNetPnl() {
+        return realizedPnl + unrealizedPnl - fees;
+    }
+
+    public long getExposure() {
+        return exposure;
+    }
+
+    public long getFills() {
+        return fills;
+    }
+
+    //power of the amounts
+    public int getAmountPower() {
+        return symbol.getPricePower() + symbol.getSizePower();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PositionSnapshot{");
+        sb.append("symbol=").append(symbol.getName());
+        sb.append(", position=").append(FixedPoint.toString(position, symbol.getSizePower()));
+        sb.append(", averagePrice=").append(FixedPoint.toString(averagePrice, symbol.getPricePower()));
+        sb.append(", markPrice=").append(FixedPoint.toString(markPrice, symbol.getPricePower()));
+        sb.append(", realizedPnl=").append(FixedPoint.toString(realizedPnl, getAmountPower()));
+        sb.append(", unrealizedPnl=").append(FixedPoint.toString(unrealizedPnl, getAmountPower()));
+        sb.append(", fees=").append(FixedPoint.toString(fees, getAmountPower()));
+        sb.append(", exposure=").append(FixedPoint.toString(exposure, getAmountPower()));
+        sb.append(", fills=").append(fills);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,270 @@
+package io.xtrd.trading;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One side of the book: sizes in a primitive array indexed by price tick, in a window around the top of
+ * the book. Updates inside the window are O(1) and allocate nothing. Levels worse than the window are rare
+ * and kept in a tree. The window is recentred when the top of the book leaves it.
+ * <p>
+ * Sizes of the levels within a depth band from the best price are summed as they change, so the VWAP of
+ * the band is known without walking the book. Moving the best price only visits the ticks it moved by.
+ */
+class PriceLadder {
+    private static final long EMPTY = -1;
+    private final boolean bids;
+    private final long[] sizes;
+    private final TreeMap<Long, Long> outside = new TreeMap<>();
+    //price of index 0
+    private long base;
+    private int levels;
+    private int best = -1;
+    //range of indexes ever filled since the last clear
+    private int low = Integer.MAX_VALUE;
+    private int high = -1;
+    //ticks from the best price summed for the VWAP, the band is kept inside the window
+    private int bandTicks = 1;
+    private long bandSize;
+    //sum of index times size
+    private long bandWeighted;
+
+    PriceLadder(boolean bids, int windowTicks) {
+        this.bids = bids;
+        this.sizes = new long[windowTicks];
+        Arrays.fill(sizes, EMPTY);
+    }
+
+    void setBandTicks(int bandTicks) {
+        if (bandTicks < 1 || bandTicks > sizes.length / 2) {
+            throw new IllegalArgumentException("Depth must be between one tick and half the window: " + bandTicks);
+        }
+        this.bandTicks = bandTicks;
+        recomputeBand();
+    }
+
+    boolean isEmpty() {
+        return levels == 0;
+    }
+
+    //only valid when not empty
+    long bestPrice() {
+        return base + best;
+    }
+
+    long bestSize() {
+        return sizes[best];
+    }
+
+    long bandSize() {
+        return bandSize;
+    }
+
+    //volume weighted price of the band, only valid when the band size is positive
+    double bandPrice() {
+        return base + (double) bandWeighted / bandSize;
+    }
+
+    //true when a change at the price moves the best level or the band
+    boolean reaches(long price, int depth) {
+        return levels == 0 || (bids ? bestPrice() - price : price - bestPrice()) < depth;
+    }
+
+    void put(long price, long size) {
+        if (levels == 0 && outside.isEmpty()) {
+            base = price - sizes.length / 2;
+        }
+        long index = price - base;
+        if (index < 0 || index >= sizes.length) {
+            if (bids ? index < 0 : index >= sizes.length) {
+                if ((bids ? best - index : index - best) >= bandTicks) {
+                    outside.put(price, size);
+                    return;
+                }
+                //the band would reach levels outside the window
+                recentre(bestPrice());
+            } else {
+                //the top of the book left the window
+                recentre(price);
+            }
+            index = price - base;
+        }
+        int i = (int) index;
+        int oldBest = best;
+        if (sizes[i] == EMPTY) {
+            levels++;
+            low = Math.min(low, i);
+            high = Math.max(high, i);
+        } else {
+            removeFromBand(i);
+            sizes[i] = EMPTY;
+        }
+        if (best < 0 || (bids ? i > best : i < best)) {
+            best = i;
+            shiftBand(oldBest);
+        }
+        sizes[i] = size;
+        addToBand(i);
+    }
+
+    //false when there was no level at the price
+    boolean remove(long price) {
+        long index = price - base;
+        if (index < 0 || index >= sizes.length) {
+            return outside.remove(price) != null;
+        }
+        int i = (int) index;
+        if (sizes[i] == EMPTY) {
+            return false;
+        }
+        removeFromBand(i);
+        sizes[i] = EMPTY;
+        levels--;
+        if (levels == 0) {
+            best = -1;
+            bandSize = 0;
+            bandWeighted = 0;
+            if (!outside.isEmpty()) {
+                recentre(bids ? outside.lastKey() : outside.firstKey());
+            }
+        } else if (i == best) {
+            int oldBest = best;
+            best = nextBest(i);
+            if (!outside.isEmpty() && (bids ? best - bandTicks + 1 < 0 : best + bandTicks - 1 >= sizes.length)) {
+                //the band would reach levels outside the window
+                recentre(bestPrice());
+            } else {
+                shiftBand(oldBest);
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        if (high >= low) {
+            Arrays.fill(sizes, low, high + 1, EMPTY);
+        }
+        outside.clear();
+        levels = 0;
+        best = -1;
+        low = Integer.MAX_VALUE;
+        high = -1;
+        bandSize = 0;
+        bandWeighted = 0;
+    }
+
+    //size at a price, EMPTY when there is no level
+    long sizeAt(long price) {
+        long index = price - base;
+        if (index < 0 || index >= sizes.length) {
+            Long size = outside.get(price);
+            return size == null ? EMPTY : size;
+        }
+        return sizes[(int) index];
+    }
+
+    private boolean inBand(int index) {
+        int distance = bids ? best - index : index - best;
+        return distance >= 0 && distance < bandTicks;
+    }
+
+    private void addToBand(int index) {
+        if (inBand(index)) {
+            bandSize += sizes[index];
+            bandWeighted += index * sizes[index];
+        }
+    }
+
+    private void removeFromBand(int index) {
+        if (inBand(index)) {
+            bandSize -= sizes[index];
+            bandWeighted -= index * sizes[index];
+        }
+    }
+
+    //the band follows the best price, only the ticks it moved by are visited
+    private void shiftBand(int oldBest) {
+        if (oldBest < 0 || Math.abs(best - oldBest) >= bandTicks) {
+            recomputeBand();
+            return;
+        }
+        //worse edges of the old and the new band
+        int oldEdge = bids ? oldBest - bandTicks + 1 : oldBest + bandTicks - 1;
+        int newEdge = bids ? best - bandTicks + 1 : best + bandTicks - 1;
+        //levels between the best prices are empty, only the worse edge moves levels in or out
+        if (bids) {
+            sumRange(Math.min(oldEdge, newEdge), Math.max(oldEdge, newEdge) - 1, best > oldBest ? -1 : 1);
+        } else {
+            sumRange(Math.min(oldEdge, newEdge) + 1, Math.max(oldEdge, newEdge), best < oldBest ? -1 : 1);
+        }
+    }
+
+    private void recomputeBand() {
+        bandSize = 0;
+        bandWeighted = 0;
+        if (best >= 0) {
+            if (bids) {
+                sumRange(best - bandTicks + 1, best, 1);
+            } else {
+                sumRange(best, best + bandTicks - 1, 1);
+            }
+        }
+    }
+
+    private void sumRange(int from, int to, int sign) {
+        for (int i = Math.max(from, low); i <= Math.min(to, high); i++) {
+            if (sizes[i] != EMPTY) {
+                bandSize += sign * sizes[i];
+                bandWeighted += sign * i * sizes[i];
+            }
+        }
+    }
+
+    private int nextBest(int from) {
+        if (bids) {
+            for (int i = from - 1; i >= low; i--) {
+                if (sizes[i] != EMPTY) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = from + 1; i <= high; i++) {
+                if (sizes[i] != EMPTY) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalStateException("No level left of " + levels);
+    }
+
+    //moves the window to centre it on a price, O(window)
+    private void recentre(long price) {
+        for (int i = low; i <= high; i++) {
+            if (sizes[i] != EMPTY) {
+                outside.put(base + i, sizes[i]);
+                sizes[i] = EMPTY;
+            }
+        }
+        levels = 0;
+        best = -1;
+        low = Integer.MAX_VALUE;
+        high = -1;
+        base = price - sizes.length / 2;
+        Iterator<Map.Entry<Long, Long>> iterator = outside.subMap(base, base + sizes.length).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> entry = iterator.next();
+            int index = (int) (entry.getKey() - base);
+            sizes[index] = entry.getValue();
+            levels++;
+            low = Math.min(low, index);
+            high = Math.max(high, index);
+            if (best < 0 || (bids ? index > best : index < best)) {
+                best = index;
+            }
+            iterator.remove();
+        }
+        recomputeBand();
+    }
+}
@@ -1,5 +1,34 @@
 package io.xtrd.trading;
 
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.events.PriceEvent;
+import io.xtrd.trading.events.TradesEvent;
+
+import java.util.function.Consumer;
+
 public enum PriceSource {
-    TRADES, TOB_ASKS, TOB_BIDS, TOB_AVG
+    TRADES, TOB_ASKS, TOB_BIDS, TOB_AVG, MICROPRICE, WEIGHTED_MID, DEPTH_VWAP;
+
+    //wire the consumers turning market data into price events, returns the book of book based sources
+    public Book attach(Symbol symbol, EventProcessor eventProcessor, boolean tobPerBatch) {
+        if (this == TRADES) {
+            //take prices from the trades
+            Consumer<TradesEvent> tradesConsumer = event -> {
+                if (event.getSymbol() != symbol) {
+                    return;
+                }
+                for (MarketData trade : event.getMarketData()) {
+                    eventProcessor.putEvent(new PriceEvent(symbol, trade.getPrice(), eventProcessor.getClock().currentTimeMillis()));
+                }
+            };
+            eventProcessor.addConsumer(TradesEvent.class, tradesConsumer);
+            return null;
+        } else {
+            //take prices from the top of the book
+            Book book = new Book(symbol, eventProcessor);
+            book.setTOBConsumerType(book.getType(this));
+            book.setPublishPerBatch(tobPerBatch);
+            return book;
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package io.xtrd.trading;
+
+/**
+ * How the box size of a renko series is chosen. The size configured for a series is a price for FIXED, a
+ * percentage of the last brick close for PERCENT and a multiple of the average true range for ATR.
+ */
+public enum RenkoBox {
+    FIXED, PERCENT, ATR;
+
+    //PERCENT and ATR parameters are plain decimals with four digits, 0.25 is 2500
+    public static final int PARAMETER_POWER = 4;
+    public static final long PARAMETER_SCALE = 10_000L;
+
+    public int parameterPower(Symbol symbol) {
+        return this == FIXED ? symbol.getPricePower() : PARAMETER_POWER;
+    }
+}
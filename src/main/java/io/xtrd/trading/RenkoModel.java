@@ -5,61 +5,304 @@ import io.xtrd.trading.events.PriceEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
+/**
+ * Renko bricks of several box sizes computed from one price stream. The series id of a brick is the index
+ * of its size. A price between the nearest brick boundaries of all series is rejected by two comparisons,
+ * the series are only walked when at least one of them forms a brick.
+ * <p>
+ * Box sizes are fixed, a percentage of the last brick close or a multiple of the average true range of
+ * time bars, see {@link RenkoBox}. All of them are updated in constant time per price. Bars and bricks are timed
+ * by the price event, not by when it is dispatched.
+ */
 public class RenkoModel {
+    //a gap wider than this is published as its last bricks, the series still moves to the price
+    static final int MAX_BRICKS_PER_UPDATE = 256;
     private final Logger logger = LoggerFactory.getLogger(RenkoModel.class);
-    private BigDecimal previousBrickTopPrice;
-    private BigDecimal previousBrickBottomPrice;
-    private long lastBrickTime = 0;
+    private final Map<String, SeriesState> states = new HashMap<>();
     private EventProcessor eventProcessor;
+    //fixed point, a price for FIXED boxes and a RenkoBox parameter otherwise
+    private final long[] sizes;
+    private RenkoBox box = RenkoBox.FIXED;
+    //bricks against the last direction needed to reverse
+    private int reversal = 1;
+    private int atrPeriod = 14;
+    private long atrBarMillis = 60_000L;
+    //prices of a session come from one symbol, the lookup is skipped
+    private Symbol lastSymbol;
+    private SeriesState lastState;
 
-    public RenkoModel(BigDecimal size, EventProcessor eventProcessor) {
+    public RenkoModel(long size, EventProcessor eventProcessor) {
+        this(new long[]{size}, eventProcessor);
+    }
+
+    public RenkoModel(long[] sizes, EventProcessor eventProcessor) {
+        if (sizes.length == 0) {
+            throw new IllegalArgumentException("At least one brick size is required");
+        }
+        for (long size : sizes) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Brick size must be positive: " + size);
+            }
+        }
         this.eventProcessor = eventProcessor;
-        eventProcessor.addConsumer(PriceEvent.class, getPriceConsumer(size));
+        this.sizes = sizes.clone();
+        eventProcessor.addConsumer(PriceEvent.class, getPriceConsumer());
+        //prices forming a brick are never conflated, the bricks stay exactly the same
+        eventProcessor.addConflationGuard(PriceEvent.class, priceEvent -> stateOf(priceEvent.getSymbol()).mustKeep(priceEvent.getPrice()));
+    }
+
+    //comma separated sizes, like renko.size=20,50,100
+    public static long[] parseSizes(String text, int power) {
+        String[] parts = text.split(",");
+        long[] result = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = FixedPoint.parse(parts[i].trim(), power);
+        }
+        return result;
+    }
+
+    public int getSeriesCount() {
+        return sizes.length;
     }
 
-    Consumer<PriceEvent> getPriceConsumer(BigDecimal size) {
+    public long getSize(int series) {
+        return sizes[series];
+    }
+
+    public RenkoBox getBox() {
+        return box;
+    }
+
+    //must be set before the first price
+    public void setBox(RenkoBox box) {
+        this.box = box;
+    }
+
+    public int getReversal() {
+        return reversal;
+    }
+
+    public void setReversal(int reversal) {
+        if (reversal < 1) {
+            throw new IllegalArgumentException("Reversal must be at least one brick: " + reversal);
+        }
+        this.reversal = reversal;
+    }
+
+    public void setAtrPeriod(int bars, long barMillis) {
+        if (bars < 1 || barMillis < 1) {
+            throw new IllegalArgumentException("ATR period must be positive: " + bars + " bars of " + barMillis + "ms");
+        }
+        this.atrPeriod = bars;
+        this.atrBarMillis = barMillis;
+    }
+
+    private SeriesState stateOf(Symbol symbol) {
+        if (symbol != lastSymbol) {
+            SeriesState state = states.get(symbol.getName());
+            if (state == null) {
+                state = new SeriesState(symbol);
+                states.put(symbol.getName(), state);
+            }
+            lastSymbol = symbol;
+            lastState = state;
+        }
+        return lastState;
+    }
+
+    Consumer<PriceEvent> getPriceConsumer() {
         return priceEvent -> {
-            BigDecimal price = priceEvent.getPrice();
+            long price = priceEvent.getPrice();
             if (logger.isDebugEnabled()) {
                 logger.debug("New price received {}", price);
             }
-            if (previousBrickTopPrice == null) {
-                //init
-                previousBrickTopPrice = price;
-                previousBrickBottomPrice = price;
+            SeriesState state = stateOf(priceEvent.getSymbol());
+            long time = priceEvent.getTime();
+            if (!state.initialized) {
+                state.init(price, time);
+                return;
+            }
+            if (box == RenkoBox.ATR) {
+                state.updateBar(price, time);
+            }
+            if (price >= state.nextUp || price <= state.nextDown) {
+                state.update(price, time);
+            }
+        };
+    }
+
+    //struct of arrays, one slot per series
+    private class SeriesState {
+        private final Symbol symbol;
+        private final long[] topPrices = new long[sizes.length];
+        private final long[] bottomPrices = new long[sizes.length];
+        private final long[] lastBrickTimes = new long[sizes.length];
+        //current box size, zero until known
+        private final long[] boxSizes = new long[sizes.length];
+        //direction of the last brick, 1 up, -1 down, 0 before the first one
+        private final int[] directions = new int[sizes.length];
+        private boolean initialized;
+        //nearest boundaries over all series
+        private long nextUp;
+        private long nextDown;
+        //time bar feeding the average true range
+        private long bar = Long.MIN_VALUE;
+        private long barHigh;
+        private long barLow;
+        private long barClose;
+        private long previousClose;
+        private int bars;
+        private double atr;
+
+        SeriesState(Symbol symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean mustKeep(long price) {
+            //bar extremes feed the ATR
+            return !initialized || price >= nextUp || price <= nextDown
+                    || (box == RenkoBox.ATR && (price > barHigh || price < barLow));
+        }
+
+        void init(long price, long time) {
+            initialized = true;
+            for (int series = 0; series < sizes.length; series++) {
+                topPrices[series] = price;
+                bottomPrices[series] = price;
+                boxSizes[series] = box == RenkoBox.PERCENT ? percentBox(series, price) : box == RenkoBox.FIXED ? sizes[series] : 0;
+            }
+            if (box == RenkoBox.ATR) {
+                updateBar(price, time);
+            }
+            updateBoundaries();
+        }
+
+        void updateBar(long price, long time) {
+            long currentBar = Math.floorDiv(time, atrBarMillis);
+            if (currentBar == bar) {
+                barHigh = Math.max(barHigh, price);
+                barLow = Math.min(barLow, price);
+                barClose = price;
+                return;
+            }
+            if (bar != Long.MIN_VALUE) {
+                closeBar();
+            }
+            bar = currentBar;
+            barHigh = price;
+            barLow = price;
+            barClose = price;
+        }
+
+        private void closeBar() {
+            long trueRange = bars == 0
+                    ? barHigh - barLow
+                    : Math.max(barHigh, previousClose) - Math.min(barLow, previousClose);
+            previousClose = barClose;
+            bars++;
+            //simple average while warming up, then Wilder smoothing
+            if (bars <= atrPeriod) {
+                atr += (trueRange - atr) / bars;
             } else {
-                if (price.compareTo(previousBrickTopPrice.add(size)) >= 0) {
-                    //creating higher renko bricks
-                    previousBrickBottomPrice = previousBrickTopPrice;
-                    previousBrickTopPrice = previousBrickTopPrice.add(size);
-                    addBrickToProcessor(previousBrickBottomPrice, previousBrickTopPrice);
-                    // Perhaps the price has grown in more than one brick
-                    getPriceConsumer(size).accept(priceEvent);
-                } else if (price.compareTo(previousBrickBottomPrice.subtract(size)) <= 0) {
+                atr = (atr * (atrPeriod - 1) + trueRange) / atrPeriod;
+            }
+            for (int series = 0; series < sizes.length; series++) {
+                long boxSize = (long) (atr * sizes[series] / RenkoBox.PARAMETER_SCALE);
+                boxSizes[series] = Math.max(boxSize, atr > 0 ? 1 : 0);
+            }
+            updateBoundaries();
+        }
+
+        void update(long price, long time) {
+            for (int series = 0; series < sizes.length; series++) {
+                long size = boxSizes[series];
+                if (size == 0) {
+                    continue;
+                }
+                if (price >= upBoundary(series)) {
+                    //creating higher renko bricks, the price may have grown in more than one brick
+                    long count = (price - topPrices[series]) / size;
+                    Brick[] bricks = new Brick[cap(series, count)];
+                    topPrices[series] += size * (count - bricks.length);
+                    for (int i = 0; i < bricks.length; i++) {
+                        bottomPrices[series] = topPrices[series];
+                        topPrices[series] = topPrices[series] + size;
+                        bricks[i] = newBrick(series, time, bottomPrices[series], topPrices[series]);
+                    }
+                    directions[series] = 1;
+                    publish(series, bricks);
+                } else if (price <= downBoundary(series)) {
                     //creating lower renko bricks
-                    previousBrickTopPrice = previousBrickBottomPrice;
-                    previousBrickBottomPrice = previousBrickBottomPrice.subtract(size);
-                    addBrickToProcessor(previousBrickTopPrice, previousBrickBottomPrice);
-                    getPriceConsumer(size).accept(priceEvent);
+                    long count = (bottomPrices[series] - price) / size;
+                    Brick[] bricks = new Brick[cap(series, count)];
+                    bottomPrices[series] -= size * (count - bricks.length);
+                    for (int i = 0; i < bricks.length; i++) {
+                        topPrices[series] = bottomPrices[series];
+                        bottomPrices[series] = bottomPrices[series] - size;
+                        bricks[i] = newBrick(series, time, topPrices[series], bottomPrices[series]);
+                    }
+                    directions[series] = -1;
+                    publish(series, bricks);
+                } else {
+                    continue;
+                }
+                if (box == RenkoBox.PERCENT) {
+                    boxSizes[series] = percentBox(series, directions[series] > 0 ? topPrices[series] : bottomPrices[series]);
                 }
             }
-        };
-    }
+            updateBoundaries();
+        }
 
-    private void addBrickToProcessor(BigDecimal openPrice, BigDecimal closePrice) {
-        long currentBrickTime = System.currentTimeMillis();
-        if (currentBrickTime <= lastBrickTime) {
-            currentBrickTime = lastBrickTime + 1;
+        private int cap(int series, long count) {
+            if (count > MAX_BRICKS_PER_UPDATE) {
+                logger.warn("A gap of {} bricks in series {} of {}, only the last {} are published", count, series, symbol.getName(), MAX_BRICKS_PER_UPDATE);
+                return MAX_BRICKS_PER_UPDATE;
+            }
+            return (int) count;
         }
-        lastBrickTime = currentBrickTime;
-        Brick brick = new Brick(currentBrickTime, openPrice, closePrice);
-        if (logger.isDebugEnabled()) {
-            logger.debug("Created new renko brick: ", brick);
+
+        private long upBoundary(int series) {
+            return topPrices[series] + boxSizes[series] * (directions[series] < 0 ? reversal : 1);
+        }
+
+        private long downBoundary(int series) {
+            return bottomPrices[series] - boxSizes[series] * (directions[series] > 0 ? reversal : 1);
+        }
+
+        private long percentBox(int series, long price) {
+            return Math.max(Math.abs(price) * sizes[series] / (100 * RenkoBox.PARAMETER_SCALE), 1);
+        }
+
+        private void updateBoundaries() {
+            nextUp = Long.MAX_VALUE;
+            nextDown = Long.MIN_VALUE;
+            for (int series = 0; series < sizes.length; series++) {
+                if (boxSizes[series] != 0) {
+                    nextUp = Math.min(nextUp, upBoundary(series));
+                    nextDown = Math.max(nextDown, downBoundary(series));
+                }
+            }
+        }
+
+        private Brick newBrick(int series, long time, long openPrice, long closePrice) {
+            long currentBrickTime = time;
+            if (currentBrickTime <= lastBrickTimes[series]) {
+                currentBrickTime = lastBrickTimes[series] + 1;
+            }
+            lastBrickTimes[series] = currentBrickTime;
+            return new Brick(series, currentBrickTime, openPrice, closePrice);
         }
-        eventProcessor.putEvent(brick);
-    }
 
+        private void publish(int series, Brick[] bricks) {
+            BrickBatch batch = new BrickBatch(symbol, series, bricks);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Created new renko bricks: {}", batch);
+            }
+            eventProcessor.putEvent(batch);
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package io.xtrd.trading;
+
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.events.PriceEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * Pre-trade checks of the orders of one symbol, shared by the OMS of every series. OMS asks before an order or a
+ * replace is sent and tells when an accepted order stops working. Every check compares a few longs, a rejected
+ * order comes back to OMS as a REJECTED execution report. A limit of 0 is not checked.
+ * <p>
+ * The collar is against the last price of the price source, the position limit covers the filled position of
+ * the position engine and the open orders on the same side. OMS, prices and fills are on one lane.
+ */
+public class RiskGate {
+    private static final Logger logger = LoggerFactory.getLogger(RiskGate.class);
+    //OrdRejReason of FIX
+    private static final String ORDER_EXCEEDS_LIMIT = "3";
+    private final Symbol symbol;
+    private final EventProcessor eventProcessor;
+    private final PositionEngine positionEngine;
+    //fixed point of the symbol size power
+    private long maxOrderSize;
+    //fixed point, scaled by the price and size powers together
+    private long maxNotional;
+    private int maxOpenOrders;
+    private long priceCollarBps;
+    //absolute, fixed point of the symbol size power
+    private long maxPosition;
+    private long referencePrice;
+    private int openOrders;
+    private long openBuySize;
+    private long openSellSize;
+    private long rejects;
+
+    public RiskGate(Symbol symbol, PositionEngine positionEngine, EventProcessor eventProcessor) {
+        this.symbol = symbol;
+        this.positionEngine = positionEngine;
+        this.eventProcessor = eventProcessor;
+        eventProcessor.addConsumer(PriceEvent.class, getPriceConsumer());
+    }
+
+    private Consumer<PriceEvent> getPriceConsumer() {
+        return priceEvent -> {
+            //the price sources publish with the subscribed symbol instance
+            if (priceEvent.getSymbol() == symbol) {
+                referencePrice = priceEvent.getPrice();
+            }
+        };
+    }
+
+    /**
+     * @return true when the order can be sent, otherwise its rejection is on the way to OMS
+     */
+    public boolean accept(Order order) {
+        String reason = check(order);
+        if (reason != null) {
+            rejects++;
+            logger.warn("Order {} rejected: {}", order.getClOrdID(), reason);
+            eventProcessor.putEvent(ExecutionReport.builder()
+                    .setOrderId(order.getOrderID())
+                    .setClOrdID(order.getClOrdID())
+                    .setSymbol(symbol.getName())
+                    .setSide(order.getSide())
+                    .setOrderStatus(ExecutionReport.OrderStatus.REJECTED)
+                    .setTransactionTime(eventProcessor.getClock().currentTimeMillis())
+                    .setOrdRejReason(ORDER_EXCEEDS_LIMIT)
+                    .setText(reason)
+                    .build());
+            return false;
+        }
+        order.setRiskCounted(true);
+        openOrders++;
+        if (order.getSide() == Side.Buy) {
+            openBuySize += order.getSize();
+        } else {
+            openSellSize += order.getSize();
+        }
+        return true;
+    }
+
+    //the order was filled, canceled, replaced or rejected, called again for the same order it does nothing
+    public void release(Order order) {
+        if (!order.isRiskCounted()) {
+            return;
+        }
+        order.setRiskCounted(false);
+        openOrders--;
+        if (order.getSide() == Side.Buy) {
+            openBuySize -= order.getSize();
+        } else {
+            openSellSize -= order.getSize();
+        }
+    }
+
+    //null when the order passes
+    String check(Order order) {
+        long size = order.getSize();
+        long price = order.getPrice();
+        if (size <= 0 || price <= 0) {
+            return "size and price must be positive";
+        }
+        if (maxOrderSize > 0 && size > maxOrderSize) {
+            return "max order size";
+        }
+        //size * price > maxNotional without overflowing the product
+        if (maxNotional > 0 && size > maxNotional / price) {
+            return "max notional";
+        }
+        //a replace takes the place of its working order once it is acknowledged
+        if (maxOpenOrders > 0 && order.getOrigClOrdID() == null && openOrders >= maxOpenOrders) {
+            return "max open orders";
+        }
+        if (priceCollarBps > 0) {
+            if (referencePrice == 0) {
+                return "no price for the collar";
+            }
+            if (Math.abs(price - referencePrice) * 10_000 > priceCollarBps * referencePrice) {
+                return "price collar";
+            }
+        }
+        if (maxPosition > 0) {
+            long position = positionEngine == null ? 0 : positionEngine.position();
+            if (order.getSide() == Side.Buy ? position + openBuySize + size > maxPosition : position - openSellSize - size < -maxPosition) {
+                return "max position";
+            }
+        }
+        return null;
+    }
+
+    public void setMaxOrderSize(long maxOrderSize) {
+        this.maxOrderSize = maxOrderSize;
+    }
+
+    public void setMaxNotional(long maxNotional) {
+        this.maxNotional = maxNotional;
+    }
+
+    public void setMaxOpenOrders(int maxOpenOrders) {
+        this.maxOpenOrders = maxOpenOrders;
+    }
+
+    public void setPriceCollarBps(long priceCollarBps) {
+        this.priceCollarBps = priceCollarBps;
+    }
+
+    public void setMaxPosition(long maxPosition) {
+        this.maxPosition = maxPosition;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public int getOpenOrders() {
+        return openOrders;
+    }
+
+    public long getRejects() {
+        return rejects;
+    }
+}
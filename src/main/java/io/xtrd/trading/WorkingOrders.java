@@ -0,0 +1,212 @@
+package io.xtrd.trading;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Working orders of an OMS, found by ClOrdID in O(1) and by side in price order, so the orders at or through
+ * a price are a range walk instead of a scan of every order. Orders keep their price while they are working,
+ * a replace is a new order. Executed orders go to an archive of a fixed size, the oldest are dropped.
+ * <p>
+ * Each side keeps its price levels in an array indexed by tick, in a window centred on the first order placed
+ * while the side was empty. A level list is created once per tick and kept when it empties, so adding and
+ * removing orders inside the window allocates nothing. Levels outside the window are rare and kept in a tree.
+ */
+class WorkingOrders {
+    private static final int WINDOW_TICKS = 1 << 14;
+    private final Map<String, Order> orders = new HashMap<>();
+    private final Ladder buys = new Ladder();
+    private final Ladder sells = new Ladder();
+    private final ArrayDeque<Order> archive = new ArrayDeque<>();
+    private final int archiveSize;
+
+    WorkingOrders(int archiveSize) {
+        this.archiveSize = archiveSize;
+    }
+
+    void add(Order order) {
+        if (orders.put(order.getClOrdID(), order) != null) {
+            throw new IllegalArgumentException("Duplicate ClOrdID " + order.getClOrdID());
+        }
+        ladder(order.getSide()).add(order);
+    }
+
+    Order get(String clOrdID) {
+        return clOrdID == null ? null : orders.get(clOrdID);
+    }
+
+    boolean contains(String clOrdID) {
+        return get(clOrdID) != null;
+    }
+
+    //null when not working
+    Order remove(String clOrdID) {
+        Order order = clOrdID == null ? null : orders.remove(clOrdID);
+        if (order != null) {
+            ladder(order.getSide()).remove(order);
+        }
+        return order;
+    }
+
+    //removed from the working orders and kept among the last executed ones
+    void archive(Order order) {
+        remove(order.getClOrdID());
+        if (archiveSize > 0) {
+            if (archive.size() == archiveSize) {
+                archive.pollFirst();
+            }
+            archive.addLast(order);
+        }
+    }
+
+    int count(Side side) {
+        return ladder(side).count;
+    }
+
+    int size() {
+        return orders.size();
+    }
+
+    //adds the orders of the side, best price first, the result can be changed while the store is
+    void collect(Side side, List<Order> result) {
+        if (side == Side.Buy) {
+            buys.collectAtOrBelow(Long.MAX_VALUE, result);
+        } else {
+            sells.collectAtOrAbove(Long.MIN_VALUE, result);
+        }
+    }
+
+    //adds the orders of the side priced at or above the price, lowest first
+    void collectAtOrAbove(Side side, long price, List<Order> result) {
+        ladder(side).collectAtOrAbove(price, result);
+    }
+
+    //adds the orders of the side priced at or below the price, highest first
+    void collectAtOrBelow(Side side, long price, List<Order> result) {
+        ladder(side).collectAtOrBelow(price, result);
+    }
+
+    //oldest first
+    Iterable<Order> archived() {
+        return archive;
+    }
+
+    private Ladder ladder(Side side) {
+        return side == Side.Buy ? buys : sells;
+    }
+
+    private static class Level {
+        private final ArrayList<Order> orders = new ArrayList<>(2);
+    }
+
+    private static class Ladder {
+        private final Level[] window = new Level[WINDOW_TICKS];
+        private final TreeMap<Long, List<Order>> outside = new TreeMap<>();
+        //price of index 0
+        private long base;
+        //range of indexes with orders
+        private int low = Integer.MAX_VALUE;
+        private int high = -1;
+        private int count;
+
+        void add(Order order) {
+            long price = order.getPrice();
+            if (count == 0) {
+                base = price - WINDOW_TICKS / 2;
+            }
+            count++;
+            int index = index(price);
+            if (index < 0) {
+                outside.computeIfAbsent(price, key -> new ArrayList<>(2)).add(order);
+                return;
+            }
+            Level level = window[index];
+            if (level == null) {
+                level = new Level();
+                window[index] = level;
+            }
+            level.orders.add(order);
+            low = Math.min(low, index);
+            high = Math.max(high, index);
+        }
+
+        void remove(Order order) {
+            long price = order.getPrice();
+            count--;
+            int index = index(price);
+            if (index < 0) {
+                List<Order> level = outside.get(price);
+                level.remove(order);
+                if (level.isEmpty()) {
+                    outside.remove(price);
+                }
+                return;
+            }
+            window[index].orders.remove(order);
+            while (low <= high && isEmpty(low)) {
+                low++;
+            }
+            while (high >= low && isEmpty(high)) {
+                high--;
+            }
+            if (low > high) {
+                low = Integer.MAX_VALUE;
+                high = -1;
+            }
+        }
+
+        //lowest first
+        void collectAtOrAbove(long price, List<Order> result) {
+            if (count == 0) {
+                return;
+            }
+            if (price < base) {
+                collect(outside.subMap(price, true, base, false), result);
+            }
+            int from = price <= base ? 0 : price >= base + WINDOW_TICKS ? WINDOW_TICKS : (int) (price - base);
+            for (int i = Math.max(from, low); i <= high; i++) {
+                if (window[i] != null) {
+                    result.addAll(window[i].orders);
+                }
+            }
+            collect(outside.tailMap(Math.max(price, base + WINDOW_TICKS), true), result);
+        }
+
+        //highest first
+        void collectAtOrBelow(long price, List<Order> result) {
+            if (count == 0) {
+                return;
+            }
+            if (price >= base + WINDOW_TICKS) {
+                collect(outside.subMap(base + WINDOW_TICKS, true, price, true).descendingMap(), result);
+            }
+            int to = price < base ? -1 : price >= base + WINDOW_TICKS ? WINDOW_TICKS - 1 : (int) (price - base);
+            for (int i = Math.min(to, high); i >= low; i--) {
+                if (window[i] != null) {
+                    result.addAll(window[i].orders);
+                }
+            }
+            collect(outside.headMap(Math.min(price, base - 1), true).descendingMap(), result);
+        }
+
+        private boolean isEmpty(int index) {
+            return window[index] == null || window[index].orders.isEmpty();
+        }
+
+        //-1 outside the window
+        private int index(long price) {
+            return price < base || price >= base + WINDOW_TICKS ? -1 : (int) (price - base);
+        }
+
+        private static void collect(NavigableMap<Long, List<Order>> levels, List<Order> result) {
+            for (List<Order> level : levels.values()) {
+                result.addAll(level);
+            }
+        }
+    }
+}
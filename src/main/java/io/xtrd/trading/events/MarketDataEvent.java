@@ -1,16 +1,23 @@
 package io.xtrd.trading.events;
 
 import io.xtrd.trading.MarketData;
+import io.xtrd.trading.Symbol;
 
 import java.util.List;
 
 public class MarketDataEvent implements IEvent {
+    private final Symbol symbol;
     private List<MarketData> marketData;
 
-    public MarketDataEvent(List<MarketData> marketData) {
+    public MarketDataEvent(Symbol symbol, List<MarketData> marketData) {
+        this.symbol = symbol;
         this.marketData = marketData;
     }
 
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
     public List<MarketData> getMarketData() {
         return marketData;
     }
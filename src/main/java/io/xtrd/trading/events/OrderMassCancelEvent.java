@@ -0,0 +1,39 @@
+package io.xtrd.trading.events;
+
+import io.xtrd.trading.Side;
+import io.xtrd.trading.Symbol;
+
+//cancels every resting order of the symbol on the side
+public class OrderMassCancelEvent implements IEvent {
+    private final Symbol symbol;
+    private final Side side;
+    private final String clOrdID;
+
+    public OrderMassCancelEvent(Symbol symbol, Side side, String clOrdID) {
+        this.symbol = symbol;
+        this.side = side;
+        this.clOrdID = clOrdID;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public String getClOrdID() {
+        return clOrdID;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("OrderMassCancelEvent{");
+        sb.append("symbol=").append(symbol.getName());
+        sb.append(", side=").append(side);
+        sb.append(", clOrdID=").append(clOrdID);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -1,15 +1,29 @@
 package io.xtrd.trading.events;
 
-import java.math.BigDecimal;
+import io.xtrd.trading.Symbol;
 
 public class PriceEvent implements IEvent {
-    private BigDecimal price;
+    private Symbol symbol;
+    //fixed point, scaled by the symbol price power
+    private long price;
+    //clock millis the price was taken from the market data
+    private long time;
 
-    public PriceEvent(BigDecimal price) {
+    public PriceEvent(Symbol symbol, long price, long time) {
+        this.symbol = symbol;
         this.price = price;
+        this.time = time;
     }
 
-    public BigDecimal getPrice() {
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public long getPrice() {
         return price;
     }
+
+    public long getTime() {
+        return time;
+    }
 }
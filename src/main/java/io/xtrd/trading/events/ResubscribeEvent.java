@@ -0,0 +1,16 @@
+package io.xtrd.trading.events;
+
+import io.xtrd.trading.Symbol;
+
+//drop the market data subscription and subscribe again to get a fresh snapshot
+public class ResubscribeEvent implements IEvent {
+    private final Symbol symbol;
+
+    public ResubscribeEvent(Symbol symbol) {
+        this.symbol = symbol;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+}
@@ -0,0 +1,28 @@
+package io.xtrd.trading.events;
+
+import io.xtrd.trading.Symbol;
+
+//market data entries of the symbol were missed, the book built from the deltas can't be trusted
+public class SequenceGapEvent implements IEvent {
+    private final Symbol symbol;
+    private final long expected;
+    private final long received;
+
+    public SequenceGapEvent(Symbol symbol, long expected, long received) {
+        this.symbol = symbol;
+        this.expected = expected;
+        this.received = received;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public long getExpected() {
+        return expected;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+}
@@ -1,16 +1,23 @@
 package io.xtrd.trading.events;
 
 import io.xtrd.trading.MarketData;
+import io.xtrd.trading.Symbol;
 
 import java.util.List;
 
 public class TradesEvent implements IEvent {
+    private final Symbol symbol;
     private List<MarketData> marketData;
 
-    public TradesEvent(List<MarketData> marketData) {
+    public TradesEvent(Symbol symbol, List<MarketData> marketData) {
+        this.symbol = symbol;
         this.marketData = marketData;
     }
 
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
     public List<MarketData> getMarketData() {
         return marketData;
     }
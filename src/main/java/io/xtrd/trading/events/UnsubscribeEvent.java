@@ -0,0 +1,15 @@
+package io.xtrd.trading.events;
+
+import io.xtrd.trading.Symbol;
+
+public class UnsubscribeEvent implements IEvent {
+    private final Symbol symbol;
+
+    public UnsubscribeEvent(Symbol symbol) {
+        this.symbol = symbol;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+}
@@ -0,0 +1,364 @@
+package io.xtrd;
+
+import io.xtrd.trading.BrickBatch;
+import io.xtrd.trading.RenkoModel;
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.MarketDataEvent;
+import io.xtrd.trading.events.PriceEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class EventProcessorTest {
+
+    @Test
+    public void testRingBufferDeliversInOrder() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            EventProcessor eventProcessor = new EventProcessor(8, waitStrategy);
+            List<Integer> received = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(1);
+            eventProcessor.addConsumer(Counter.class, (Consumer<Counter>) counter -> {
+                received.add(counter.value);
+                if (counter.value == 9999) {
+                    done.countDown();
+                }
+            });
+            eventProcessor.start();
+            for (int i = 0; i < 10000; i++) {
+                eventProcessor.putEvent(new Counter(i));
+            }
+            assertTrue(waitStrategy.name(), done.await(10, TimeUnit.SECONDS));
+            eventProcessor.stop();
+            assertEquals(10000, received.size());
+            for (int i = 0; i < received.size(); i++) {
+                assertEquals(i, received.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testConsumerCanPublishIntoFullRing() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(2, WaitStrategy.BLOCKING);
+        CountDownLatch done = new CountDownLatch(100);
+        eventProcessor.addConsumer(Counter.class, (Consumer<Counter>) counter -> {
+            for (int i = 0; i < 10; i++) {
+                eventProcessor.putEvent(new Echo());
+            }
+        });
+        eventProcessor.addConsumer(Echo.class, echo -> done.countDown());
+        eventProcessor.start();
+        for (int i = 0; i < 10; i++) {
+            eventProcessor.putEvent(new Counter(i));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+    }
+
+    @Test
+    public void testDispatchFollowsEventHierarchy() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor();
+        List<String> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(IEvent.class, event -> received.add("any"));
+        eventProcessor.addConsumer(Counter.class, (Consumer<Counter>) counter -> received.add("counter"));
+        eventProcessor.start();
+        //registered after start, still has to be dispatched
+        eventProcessor.addConsumer(Echo.class, echo -> done.countDown());
+        eventProcessor.putEvent(new SubCounter(1));
+        eventProcessor.putEvent(new Echo());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        assertEquals(Arrays.asList("any", "counter", "any"), received);
+    }
+
+    @Test
+    public void testLanesRunOnOwnThreadsAndKeepOrder() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(64, WaitStrategy.BLOCKING, true);
+        eventProcessor.assignLane(Counter.class, Lane.MARKET_DATA);
+        List<Integer> received = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(Counter.class, (Consumer<Counter>) counter -> {
+            if (counter.value == 0) {
+                threads.add(Thread.currentThread().getName());
+            }
+            eventProcessor.putEvent(new Echo(counter.value));
+        });
+        eventProcessor.addConsumer(Echo.class, (Consumer<Echo>) echo -> {
+            if (echo.value == 0) {
+                threads.add(Thread.currentThread().getName());
+            }
+            received.add(echo.value);
+            if (echo.value == 9999) {
+                done.countDown();
+            }
+        });
+        eventProcessor.start();
+        for (int i = 0; i < 10000; i++) {
+            eventProcessor.putEvent(new Counter(i));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        assertEquals(Arrays.asList("Event processor market_data", "Event processor strategy"), threads);
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testConflationKeepsBricks() throws Exception {
+        List<String> expected = runRenko(false);
+        List<String> conflated = runRenko(true);
+        assertTrue(expected.size() > 10);
+        assertEquals(expected, conflated);
+    }
+
+    private List<String> runRenko(boolean conflation) throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(1 << 16, WaitStrategy.BLOCKING);
+        if (conflation) {
+            eventProcessor.enableConflation(PriceEvent.class, (older, newer) -> newer);
+        }
+        Symbol symbol = new Symbol("BTC/USD", 4, 2);
+        new RenkoModel(100, eventProcessor);
+        List<String> bricks = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(BrickBatch.class, (Consumer<BrickBatch>) batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                bricks.add(batch.get(i).getOpen() + "-" + batch.get(i).getClose());
+            }
+        });
+        eventProcessor.addConsumer(Echo.class, echo -> done.countDown());
+        Random random = new Random(7);
+        long price = 10000;
+        //queued before start, the worker finds a backlog
+        for (int i = 0; i < 20000; i++) {
+            price += random.nextInt(41) - 20;
+            eventProcessor.putEvent(new PriceEvent(symbol, price, i));
+        }
+        eventProcessor.putEvent(new Echo());
+        eventProcessor.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        if (conflation) {
+            assertTrue(eventProcessor.getConflatedCount(PriceEvent.class) > 0);
+        }
+        return bricks;
+    }
+
+    @Test
+    public void testEndOfBatchAfterDrain() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor();
+        eventProcessor.setBatchSize(100);
+        List<Integer> batchSizes = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(Counter.class, new BatchAwareConsumer<Counter>() {
+            private int received;
+
+            @Override
+            public void onEvent(Counter event) {
+                received++;
+            }
+
+            @Override
+            public void onEndOfBatch() {
+                batchSizes.add(received);
+                received = 0;
+                if (batchSizes.size() == 3) {
+                    done.countDown();
+                }
+            }
+        });
+        for (int i = 0; i < 250; i++) {
+            eventProcessor.putEvent(new Counter(i));
+        }
+        eventProcessor.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        assertEquals(Arrays.asList(100, 100, 50), batchSizes);
+    }
+
+    @Test
+    public void testOverflowPolicies() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(4, WaitStrategy.BLOCKING);
+        eventProcessor.setOverflowPolicy(Counter.class, OverflowPolicy.KEEP_LATEST);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 8), overflow(eventProcessor, 8, 6));
+        assertEquals(3, eventProcessor.getDroppedCount(Counter.class));
+        assertEquals(4, eventProcessor.getQueueHighWaterMark());
+
+        eventProcessor = new EventProcessor(4, WaitStrategy.BLOCKING);
+        eventProcessor.setOverflowPolicy(Counter.class, OverflowPolicy.CONFLATE, (older, newer) -> new Counter(older.value + newer.value));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5 + 6 + 7 + 8), overflow(eventProcessor, 8, 6));
+        assertEquals(3, eventProcessor.getConflatedCount(Counter.class));
+
+        //without a conflator the newest wins, the older ones are counted as dropped
+        eventProcessor = new EventProcessor(4, WaitStrategy.BLOCKING);
+        eventProcessor.setOverflowPolicy(Counter.class, OverflowPolicy.CONFLATE);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 8), overflow(eventProcessor, 8, 6));
+        assertEquals(3, eventProcessor.getDroppedCount(Counter.class));
+        assertEquals(0, eventProcessor.getConflatedCount(Counter.class));
+
+        eventProcessor = new EventProcessor(4, WaitStrategy.BLOCKING);
+        eventProcessor.setOverflowPolicy(Counter.class, OverflowPolicy.FAIL_FAST);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), overflow(eventProcessor, 6, 5));
+        assertEquals(2, eventProcessor.getRejectedCount(Counter.class));
+
+        try {
+            eventProcessor.setOverflowPolicy(MarketDataEvent.class, OverflowPolicy.KEEP_LATEST);
+            fail("book deltas can't be dropped");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            eventProcessor.setOverflowPolicy(MarketDataEvent.class, OverflowPolicy.CONFLATE);
+            fail("book deltas can't be conflated without a conflator");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    //first event holds the worker until the ring is full and the rest of the events are put
+    private List<Integer> overflow(EventProcessor eventProcessor, int lastValue, int expectedCount) throws Exception {
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(expectedCount);
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        eventProcessor.addConsumer(Counter.class, (Consumer<Counter>) event -> {
+            taken.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event.value);
+            done.countDown();
+        });
+        eventProcessor.start();
+        eventProcessor.putEvent(new Counter(0));
+        assertTrue(taken.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i <= lastValue; i++) {
+            try {
+                eventProcessor.putEvent(new Counter(i));
+            } catch (IllegalStateException e) {
+                //rejected by FAIL_FAST
+            }
+        }
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        return received;
+    }
+
+    @Test
+    public void testLatencyTracking() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(1024, WaitStrategy.BLOCKING, true);
+        eventProcessor.assignLane(Counter.class, Lane.MARKET_DATA);
+        eventProcessor.setLatencyTracking(true);
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(Counter.class, (Consumer<Counter>) counter -> eventProcessor.putEvent(new Echo(counter.value)));
+        eventProcessor.addConsumer(Echo.class, (Consumer<Echo>) echo -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (echo.value == 99) {
+                done.countDown();
+            }
+        });
+        eventProcessor.start();
+        for (int i = 0; i < 100; i++) {
+            eventProcessor.putEvent(new Counter(i));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        assertEquals(100, eventProcessor.getQueueWaitLatency(Counter.class).getCount());
+        LatencySnapshot echoHandler = eventProcessor.getHandlerLatency(Echo.class);
+        assertEquals(100, echoHandler.getCount());
+        assertTrue(echoHandler.getP50() >= TimeUnit.MICROSECONDS.toNanos(100));
+        assertTrue(echoHandler.getP50() <= echoHandler.getP99() && echoHandler.getP99() <= echoHandler.getMax());
+        assertEquals(2, eventProcessor.getHandlerLatencies().size());
+    }
+
+    @Test
+    public void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(100000, histogram.getTotalCount());
+        assertEquals(100000000L, histogram.getMax());
+        assertEquals(50000000.0, histogram.getValueAtPercentile(50), 50000000 * 0.02);
+        assertEquals(99000000.0, histogram.getValueAtPercentile(99), 99000000 * 0.02);
+        assertEquals(99900000.0, histogram.getValueAtPercentile(99.9), 99900000 * 0.02);
+        for (long value = 0; value < 1L << 40; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value <= LatencyHistogram.highestValue(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValue(index - 1));
+        }
+    }
+
+    @Test
+    public void testSpscQueueAcrossChunks() {
+        SpscEventQueue queue = new SpscEventQueue();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5000; i++) {
+                queue.offer(new Counter(i));
+            }
+            assertEquals(5000, queue.size());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(i, ((Counter) queue.poll()).value);
+            }
+            assertEquals(null, queue.poll());
+        }
+    }
+
+    @Test
+    public void testRingBufferQueue() {
+        RingBufferEventQueue queue = new RingBufferEventQueue(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(new Counter(i)));
+        }
+        assertEquals(false, queue.offer(new Counter(4)));
+        assertEquals(4, queue.size());
+        assertEquals(0, ((Counter) queue.poll()).value);
+        assertTrue(queue.offer(new Counter(4)));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ((Counter) queue.poll()).value);
+        }
+        assertEquals(null, queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    static class Counter implements IEvent {
+        final int value;
+
+        Counter(int value) {
+            this.value = value;
+        }
+    }
+
+    static class SubCounter extends Counter {
+        SubCounter(int value) {
+            super(value);
+        }
+    }
+
+    static class Echo implements IEvent {
+        final int value;
+
+        Echo() {
+            this(0);
+        }
+
+        Echo(int value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.xtrd.fix;
+
+import io.xtrd.ApiConstants;
+import org.junit.Test;
+import quickfix.DataDictionary;
+import quickfix.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertTrue;
+
+public class DictionaryTrimmerTest {
+
+    @Test
+    public void testKeepsOnlyUsedMessages() throws Exception {
+        ByteArrayOutputStream trimmed = new ByteArrayOutputStream();
+        DictionaryTrimmer.trim(DictionaryTrimmerTest.class.getResourceAsStream("/XTRD.xml"), trimmed, DictionaryTrimmer.MESSAGE_TYPES);
+        DataDictionary dictionary = new DataDictionary(new ByteArrayInputStream(trimmed.toByteArray()));
+        for (String messageType : DictionaryTrimmer.MESSAGE_TYPES) {
+            assertTrue(messageType, dictionary.isMsgType(messageType));
+        }
+        assertTrue(!dictionary.isMsgType("AE"));
+        //QuoteReqID, only in the quote messages
+        assertTrue(!dictionary.isField(131));
+        assertTrue(dictionary.isField(ApiConstants.TAG_AGGRESSOR_SIDE));
+
+        String raw = "8=FIX.4.4\u00019=0\u000135=X\u000149=XTRD-MD\u000156=RENKO-BOT\u000134=2\u000152=20200101-00:00:00.000"
+                + "\u0001262=1\u000155=BTC/USD\u0001207=BINANCE\u0001268=2"
+                + "\u0001279=0\u0001269=0\u0001270=9001.25\u0001271=0.5\u0001272=20200101\u0001273=00:00:00.000"
+                + "\u0001279=0\u0001269=2\u0001270=9001.5\u0001271=0.1\u0001272=20200101\u0001273=00:00:00.000\u00012446=1"
+                + "\u000110=000\u0001";
+        Message message = new Message(raw, dictionary, false);
+        dictionary.validate(message, true);
+        assertTrue(message.getGroups(268).size() == 2);
+    }
+}
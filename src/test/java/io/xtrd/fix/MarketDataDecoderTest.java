@@ -0,0 +1,138 @@
+package io.xtrd.fix;
+
+import io.xtrd.ApiConstants;
+import org.junit.Test;
+import quickfix.DataDictionary;
+import quickfix.Group;
+import quickfix.Message;
+import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MarketDataDecoderTest {
+    private static final int PRICE_POWER = 2;
+    private static final int SIZE_POWER = 4;
+    private static final io.xtrd.trading.Symbol SYMBOL = new io.xtrd.trading.Symbol("BTC/USD", SIZE_POWER, PRICE_POWER);
+
+    @Test
+    public void testSameEntriesAsGroups() throws Exception {
+        DataDictionary dictionary = new DataDictionary(MarketDataDecoderTest.class.getResourceAsStream("/XTRD.xml"));
+        Random random = new Random(7);
+        SubscriptionManager subscriptions = new SubscriptionManager();
+        subscriptions.subscribe(new io.xtrd.trading.Symbol("ETH/USD", 4, 2));
+        subscriptions.subscribe(SYMBOL);
+        String[] requestId = new String[1];
+        subscriptions.flush((symbol, id) -> {
+        }, (symbol, id) -> requestId[0] = symbol == SYMBOL ? id : requestId[0]);
+        MarketDataDecoder groups = new MarketDataDecoder();
+        MarketDataDecoder raw = new MarketDataDecoder();
+        for (int i = 0; i < 500; i++) {
+            Message message = random.nextInt(10) == 0 ? snapshot(random, i) : incremental(random, i);
+            message.setString(MDReqID.FIELD, requestId[0]);
+            Message parsed = new Message(message.toString(), dictionary, false);
+            groups.decode(parsed, subscriptions);
+            raw.decode(parsed.toRawString(), subscriptions);
+            assertEquals(groups.getMsgType(), raw.getMsgType());
+            assertEquals(1, raw.getSymbolId());
+            assertEquals(1, groups.getSymbolId());
+            assertEquals(groups.size(), raw.size());
+            assertEquals(groups.getSnapshotRptSeq(), raw.getSnapshotRptSeq());
+            assertEquals(message instanceof MarketDataSnapshotFullRefresh ? i * 10 : 0, raw.getSnapshotRptSeq());
+            for (int entry = 0; entry < groups.size(); entry++) {
+                assertEquals(groups.getEntryType(entry), raw.getEntryType(entry));
+                assertEquals(groups.getUpdateAction(entry), raw.getUpdateAction(entry));
+                assertEquals(groups.getPrice(entry), raw.getPrice(entry));
+                assertEquals(groups.getSize(entry), raw.getSize(entry));
+                assertEquals(groups.getRptSeq(entry), raw.getRptSeq(entry));
+                assertEquals(groups.getAggressorSide(entry), raw.getAggressorSide(entry));
+            }
+        }
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        //no numeric MDReqID, found by the symbol name
+        StringBuilder sb = new StringBuilder("8=FIX.4.4\u00019=0\u000135=X\u0001262=A\u000155=BTC/USD\u0001207=BINANCE\u0001268=40\u0001");
+        for (int i = 0; i < 40; i++) {
+            sb.append("279=0\u0001269=").append(i % 2).append("\u0001270=").append(100 + i).append(".5\u0001271=0.25\u0001");
+        }
+        sb.append("10=000\u0001");
+        SubscriptionManager subscriptions = new SubscriptionManager();
+        subscriptions.subscribe(SYMBOL);
+        subscriptions.flush((symbol, id) -> {
+        }, (symbol, id) -> {
+        });
+        MarketDataDecoder decoder = new MarketDataDecoder();
+        decoder.decode(sb, subscriptions);
+        assertEquals(0, decoder.getSymbolId());
+        assertEquals(40, decoder.size());
+        assertEquals(13950, decoder.getPrice(39));
+        assertEquals(2500, decoder.getSize(39));
+        assertEquals(MDEntryType.OFFER, decoder.getEntryType(39));
+    }
+
+    private static Message snapshot(Random random, int rptSeq) {
+        MarketDataSnapshotFullRefresh message = new MarketDataSnapshotFullRefresh();
+        header(message);
+        //required, at message level
+        message.setInt(RptSeq.FIELD, rptSeq * 10);
+        int entries = 1 + random.nextInt(20);
+        for (int i = 0; i < entries; i++) {
+            Group group = new MarketDataSnapshotFullRefresh.NoMDEntries();
+            group.setChar(MDEntryType.FIELD, random.nextBoolean() ? MDEntryType.BID : MDEntryType.OFFER);
+            group.setString(MDEntryPx.FIELD, decimal(random, PRICE_POWER));
+            group.setString(MDEntrySize.FIELD, decimal(random, SIZE_POWER));
+            group.setString(MDEntryDate.FIELD, "20200101");
+            group.setString(MDEntryTime.FIELD, "00:00:00.000");
+            message.addGroup(group);
+        }
+        return message;
+    }
+
+    private static Message incremental(Random random, int rptSeq) {
+        MarketDataIncrementalRefresh message = new MarketDataIncrementalRefresh();
+        header(message);
+        int entries = 1 + random.nextInt(5);
+        for (int i = 0; i < entries; i++) {
+            Group group = new MarketDataIncrementalRefresh.NoMDEntries();
+            char action = (char) ('0' + random.nextInt(4));
+            group.setChar(MDUpdateAction.FIELD, action);
+            char type = (char) ('0' + random.nextInt(3));
+            group.setChar(MDEntryType.FIELD, type);
+            group.setString(MDEntryPx.FIELD, decimal(random, PRICE_POWER));
+            //deletes come without a size sometimes
+            if (action != MDUpdateAction.DELETE || random.nextBoolean()) {
+                group.setString(MDEntrySize.FIELD, decimal(random, SIZE_POWER));
+            }
+            group.setString(MDEntryDate.FIELD, "20200101");
+            group.setString(MDEntryTime.FIELD, "00:00:00.000");
+            if (random.nextBoolean()) {
+                group.setInt(RptSeq.FIELD, rptSeq * 10 + i);
+            }
+            if (type == MDEntryType.TRADE) {
+                group.setInt(ApiConstants.TAG_AGGRESSOR_SIDE, 1 + random.nextInt(2));
+            }
+            message.addGroup(group);
+        }
+        return message;
+    }
+
+    private static void header(Message message) {
+        message.getHeader().setString(SenderCompID.FIELD, "XTRD-MD");
+        message.getHeader().setString(TargetCompID.FIELD, "RENKO-BOT");
+        message.getHeader().setInt(MsgSeqNum.FIELD, 1);
+        message.getHeader().setString(SendingTime.FIELD, "20200101-00:00:00.000");
+        message.setString(Symbol.FIELD, "BTC/USD");
+        message.setString(SecurityExchange.FIELD, ApiConstants.EXCHANGE);
+    }
+
+    //trailing zeros and whole numbers as the venue sends them
+    private static String decimal(Random random, int power) {
+        return new BigDecimal(random.nextInt(10_000_000)).movePointLeft(random.nextInt(power + 1)).toPlainString();
+    }
+}
@@ -0,0 +1,184 @@
+package io.xtrd.fix;
+
+import io.xtrd.ApiConstants;
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.Order;
+import io.xtrd.trading.OrderOperation;
+import io.xtrd.trading.Side;
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.OrderCommandEvent;
+import io.xtrd.trading.events.OrderMassCancelEvent;
+import org.junit.Test;
+import quickfix.ApplicationAdapter;
+import quickfix.DefaultSessionFactory;
+import quickfix.MemoryStoreFactory;
+import quickfix.Message;
+import quickfix.SLF4JLogFactory;
+import quickfix.Session;
+import quickfix.SessionFactory;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.field.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrderGatewayTest {
+    private static final Symbol SYMBOL = new Symbol("BTC/USD", 4, 2);
+
+    @Test
+    public void testTemplatesAreRefilled() throws Exception {
+        OrderGateway gateway = new OrderGateway(new EventProcessor());
+        gateway.setAccount("ACC");
+        Message first = gateway.newOrderSingle(new Order(SYMBOL, "1", Side.Buy, 1000050, 15000));
+        Message second = gateway.newOrderSingle(new Order(new Symbol("ETH/USD", 3, 1), "2", Side.Sell, 2005, 1));
+        assertSame(first, second);
+        assertEquals("2", second.getString(ClOrdID.FIELD));
+        assertEquals(quickfix.field.Side.SELL, second.getChar(quickfix.field.Side.FIELD));
+        assertEquals("ETH/USD", second.getString(quickfix.field.Symbol.FIELD));
+        assertEquals("200.5", second.getString(Price.FIELD));
+        assertEquals("0.001", second.getString(OrderQty.FIELD));
+        assertEquals("ACC", second.getString(Account.FIELD));
+        assertEquals(OrdType.LIMIT, second.getChar(OrdType.FIELD));
+        assertEquals(ApiConstants.EXCHANGE, second.getString(ExDestination.FIELD));
+    }
+
+    @Test
+    public void testCancelWithoutOrderID() throws Exception {
+        OrderGateway gateway = new OrderGateway(new EventProcessor());
+        gateway.setAccount("ACC");
+        Order acknowledged = new Order(SYMBOL, "1", Side.Buy, 1000050, 15000);
+        acknowledged.setOrderID("X1");
+        Message message = gateway.orderCancelRequest(acknowledged);
+        assertEquals("X1", message.getString(OrderID.FIELD));
+        assertEquals("D1", message.getString(ClOrdID.FIELD));
+        assertEquals("1", message.getString(OrigClOrdID.FIELD));
+
+        message = gateway.orderCancelRequest(new Order(SYMBOL, "2", Side.Sell, 1000050, 15000));
+        assertFalse(message.isSetField(OrderID.FIELD));
+        assertEquals("2", message.getString(OrigClOrdID.FIELD));
+    }
+
+    @Test
+    public void testReplaceAndMassCancel() throws Exception {
+        OrderGateway gateway = new OrderGateway(new EventProcessor());
+        gateway.setAccount("ACC");
+        Order order = new Order(SYMBOL, "2", Side.Sell, 1000100, 15000);
+        order.setOrigClOrdID("1");
+        order.setOrderID("X1");
+        Message message = gateway.orderCancelReplaceRequest(order);
+        assertEquals("1", message.getString(OrigClOrdID.FIELD));
+        assertEquals("2", message.getString(ClOrdID.FIELD));
+        assertEquals("X1", message.getString(OrderID.FIELD));
+        assertEquals("10001.00", message.getString(Price.FIELD));
+        assertEquals("ACC", message.getString(Account.FIELD));
+
+        message = gateway.orderMassCancelRequest(new OrderMassCancelEvent(SYMBOL, Side.Buy, "M3"));
+        assertEquals("M3", message.getString(ClOrdID.FIELD));
+        assertEquals(MassCancelRequestType.CANCEL_ORDERS_FOR_A_SECURITY, message.getChar(MassCancelRequestType.FIELD));
+        assertEquals(quickfix.field.Side.BUY, message.getChar(quickfix.field.Side.FIELD));
+        assertEquals("BTC/USD", message.getString(quickfix.field.Symbol.FIELD));
+    }
+
+    @Test
+    public void testCancelsFirstAndWaitingOrdersDropped() throws Exception {
+        long[] time = new long[1];
+        EventProcessor eventProcessor = new EventProcessor();
+        eventProcessor.setClock(() -> time[0]);
+        OrderGateway gateway = new OrderGateway(eventProcessor);
+        gateway.setRateLimits(1, 0, 0);
+        gateway.setSession(session("RATE"));
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.add, new Order(SYMBOL, "1", Side.Buy, 1000050, 15000)));
+        gateway.drain();
+        assertEquals(1, gateway.getSent());
+
+        Order waiting = new Order(SYMBOL, "2", Side.Buy, 1000100, 15000);
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.add, waiting));
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.delete, new Order(SYMBOL, "0", Side.Sell, 1000000, 15000)));
+        gateway.drain();
+        assertEquals(1, gateway.getSent());
+        assertEquals(1, gateway.getThrottleEpisodes());
+        assertEquals(2, gateway.getQueued());
+        time[0] += 1000;
+        gateway.drain();
+        assertEquals(2, gateway.getSent());
+        assertEquals(1, gateway.getQueued());
+
+        //the cancel went ahead, the new order is still waiting and is not sent at all
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.delete, waiting));
+        assertEquals(1, gateway.getDropped());
+        assertEquals(0, gateway.getQueued());
+
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.add, new Order(SYMBOL, "3", Side.Sell, 1000150, 15000)));
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.add, new Order(SYMBOL, "4", Side.Sell, 1000200, 15000)));
+        assertEquals(1, gateway.getDropped());
+        assertEquals(2, gateway.getQueued());
+
+        gateway.enqueue(new OrderMassCancelEvent(SYMBOL, Side.Sell, "M5"));
+        assertEquals(3, gateway.getDropped());
+        assertEquals(1, gateway.getQueued());
+        time[0] += 1000;
+        gateway.drain();
+        assertEquals(3, gateway.getSent());
+        assertEquals(0, gateway.getQueued());
+    }
+
+    @Test
+    public void testNotLoggedOnRejectsWithoutSpendingBudget() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor();
+        List<ExecutionReport> reports = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(ExecutionReport.class, (Consumer<ExecutionReport>) reports::add);
+        eventProcessor.addConsumer(Done.class, event -> done.countDown());
+        eventProcessor.setClock(() -> 0);
+        OrderGateway gateway = new OrderGateway(eventProcessor);
+        gateway.setRateLimits(1, 0, 0);
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.add, new Order(SYMBOL, "1", Side.Buy, 1000050, 15000)));
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.delete, new Order(SYMBOL, "0", Side.Sell, 1000000, 15000)));
+        gateway.drain();
+        assertEquals(0, gateway.getSent());
+        assertEquals(1, gateway.getDropped());
+        assertEquals(0, gateway.getQueued());
+
+        //logged on again, the budget is all there
+        gateway.setSession(session("LOGON"));
+        gateway.enqueue(new OrderCommandEvent(OrderOperation.add, new Order(SYMBOL, "2", Side.Buy, 1000050, 15000)));
+        gateway.drain();
+        assertEquals(1, gateway.getSent());
+        assertEquals(0, gateway.getThrottleEpisodes());
+
+        eventProcessor.putEvent(new Done());
+        eventProcessor.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        assertEquals(1, reports.size());
+        assertEquals("1", reports.get(0).getClOrdID());
+        assertEquals(ExecutionReport.OrderStatus.REJECTED, reports.get(0).getOrderStatus());
+    }
+
+    //a session that is not logged on, send stores the messages for later
+    private static Session session(String target) throws Exception {
+        SessionID sessionID = new SessionID("FIX.4.4", "RENKO-BOT", target, ApiConstants.TRADE_SESSION_QUALIFIER);
+        SessionSettings settings = new SessionSettings();
+        settings.setString(sessionID, SessionFactory.SETTING_CONNECTION_TYPE, SessionFactory.INITIATOR_CONNECTION_TYPE);
+        settings.setString(sessionID, Session.SETTING_START_TIME, "00:00:00");
+        settings.setString(sessionID, Session.SETTING_END_TIME, "00:00:00");
+        settings.setLong(sessionID, Session.SETTING_HEARTBTINT, 30);
+        settings.setBool(sessionID, Session.SETTING_USE_DATA_DICTIONARY, false);
+        return new DefaultSessionFactory(new ApplicationAdapter(), new MemoryStoreFactory(), new SLF4JLogFactory(settings))
+                .create(sessionID, settings);
+    }
+
+    private static class Done implements IEvent {
+    }
+}
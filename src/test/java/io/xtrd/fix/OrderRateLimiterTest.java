@@ -0,0 +1,57 @@
+package io.xtrd.fix;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrderRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenEvenRate() {
+        OrderRateLimiter limiter = new OrderRateLimiter();
+        limiter.setLimits(4, 0, 0);
+        //nanoTime can be negative
+        long now = -10 * SECOND;
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(now));
+        }
+        assertFalse(limiter.tryAcquire(now));
+        assertEquals(SECOND / 4, limiter.nanosUntilAvailable(now));
+        assertTrue(limiter.tryAcquire(now + SECOND / 4));
+        assertFalse(limiter.tryAcquire(now + SECOND / 4));
+        //refilled, not more than the burst
+        now += 10 * SECOND;
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(now));
+        }
+        assertFalse(limiter.tryAcquire(now));
+    }
+
+    @Test
+    public void testWindowBudget() {
+        OrderRateLimiter limiter = new OrderRateLimiter();
+        limiter.setLimits(5, 6, 3);
+        long now = 0;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(now));
+        }
+        assertFalse(limiter.tryAcquire(now));
+        //the window refills two a second, with the one left three can go
+        now += SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(now));
+        }
+        assertFalse(limiter.tryAcquire(now));
+        assertEquals(SECOND / 2, limiter.nanosUntilAvailable(now));
+
+        limiter.setLimits(0, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(now));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.xtrd.fix;
+
+import io.xtrd.ApiConstants;
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.events.IEvent;
+import org.junit.Test;
+import quickfix.SessionID;
+import quickfix.field.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuickFIXApplicationTest {
+    private static final SessionID TRADE = new SessionID("FIX.4.4", "RENKO-BOT", "XTRD", ApiConstants.TRADE_SESSION_QUALIFIER);
+
+    @Test
+    public void testFillAfterReplaceIsForNewClOrdID() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor();
+        QuickFIXApplication application = new QuickFIXApplication(eventProcessor);
+        List<ExecutionReport> reports = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(ExecutionReport.class, (Consumer<ExecutionReport>) reports::add);
+        eventProcessor.addConsumer(Done.class, event -> done.countDown());
+        //the venue echoes the OrigClOrdID of the replace on the fill
+        application.fromApp(executionReport(ExecType.REPLACED, OrdStatus.NEW, "2", "1"), TRADE);
+        application.fromApp(executionReport(ExecType.TRADE, OrdStatus.FILLED, "2", "1"), TRADE);
+        application.fromApp(executionReport(ExecType.CANCELED, OrdStatus.CANCELED, "D3", "3"), TRADE);
+        eventProcessor.putEvent(new Done());
+        eventProcessor.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+
+        assertEquals(3, reports.size());
+        assertEquals("2", reports.get(0).getClOrdID());
+        assertEquals(ExecutionReport.OrderStatus.REPLACED, reports.get(0).getOrderStatus());
+        assertEquals("2", reports.get(1).getClOrdID());
+        assertEquals(ExecutionReport.OrderStatus.FILLED, reports.get(1).getOrderStatus());
+        assertEquals("3", reports.get(2).getClOrdID());
+        assertEquals(ExecutionReport.OrderStatus.CANCELED, reports.get(2).getOrderStatus());
+    }
+
+    private static quickfix.fix44.ExecutionReport executionReport(char execType, char ordStatus, String clOrdID, String origClOrdID) {
+        quickfix.fix44.ExecutionReport message = new quickfix.fix44.ExecutionReport();
+        message.set(new OrderID("X1"));
+        message.set(new ExecID("E" + clOrdID));
+        message.set(new ClOrdID(clOrdID));
+        message.set(new OrigClOrdID(origClOrdID));
+        message.set(new ExecType(execType));
+        message.set(new OrdStatus(ordStatus));
+        message.set(new Symbol("BTC/USD"));
+        message.set(new Side(Side.BUY));
+        message.setString(LastQty.FIELD, "0.01");
+        message.setString(LastPx.FIELD, "10000.5");
+        message.setString(CumQty.FIELD, "0.01");
+        message.setString(LeavesQty.FIELD, "0");
+        message.set(new TransactTime(LocalDateTime.of(2020, 1, 1, 0, 0)));
+        return message;
+    }
+
+    private static class Done implements IEvent {
+    }
+}
@@ -0,0 +1,56 @@
+package io.xtrd.fix;
+
+import io.xtrd.trading.Symbol;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubscriptionManagerTest {
+    private static final Symbol BTC = new Symbol("BTC/USD", 4, 2);
+    private static final Symbol ETH = new Symbol("ETH/USD", 3, 2);
+
+    @Test
+    public void testRequestsAreRoutedById() {
+        SubscriptionManager subscriptions = new SubscriptionManager();
+        subscriptions.subscribe(BTC);
+        subscriptions.subscribe(ETH);
+        List<String> sent = new ArrayList<>();
+        List<String> requestIds = new ArrayList<>();
+        flush(subscriptions, sent, requestIds);
+        assertEquals(Arrays.asList("subscribe BTC/USD", "subscribe ETH/USD"), sent);
+        assertEquals(0, subscriptions.resolve(Long.parseLong(requestIds.get(0)), null, 0, 0));
+        assertEquals(1, subscriptions.resolve(Long.parseLong(requestIds.get(1)), null, 0, 0));
+        assertEquals(3, subscriptions.getSizePower(1));
+        //without a MDReqID by the name
+        assertEquals(1, subscriptions.resolve(-1, "55=ETH/USD", 3, 10));
+        assertEquals(SubscriptionManager.UNKNOWN, subscriptions.resolve(-1, "55=XRP/USD", 3, 10));
+
+        //the old MDReqID stops resolving
+        sent.clear();
+        subscriptions.resubscribe(ETH);
+        flush(subscriptions, sent, requestIds);
+        assertEquals(Arrays.asList("unsubscribe ETH/USD " + requestIds.get(1), "subscribe ETH/USD"), sent);
+        assertEquals(SubscriptionManager.UNKNOWN, subscriptions.resolve(Long.parseLong(requestIds.get(1)), null, 0, 0));
+        assertEquals(1, subscriptions.resolve(Long.parseLong(requestIds.get(2)), null, 0, 0));
+
+        //subscribed and dropped in the same batch
+        sent.clear();
+        subscriptions.subscribe(BTC);
+        subscriptions.unsubscribe(BTC);
+        flush(subscriptions, sent, requestIds);
+        assertEquals(Arrays.asList("unsubscribe BTC/USD " + requestIds.get(0)), sent);
+        assertEquals(SubscriptionManager.UNKNOWN, subscriptions.resolve(-1, "BTC/USD", 0, 7));
+        assertEquals(0, subscriptions.idOf(BTC));
+    }
+
+    private static void flush(SubscriptionManager subscriptions, List<String> sent, List<String> requestIds) {
+        subscriptions.flush((symbol, requestId) -> sent.add("unsubscribe " + symbol + " " + requestId), (symbol, requestId) -> {
+            sent.add("subscribe " + symbol);
+            requestIds.add(requestId);
+        });
+    }
+}
@@ -9,7 +9,6 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Properties;
 import java.util.function.Consumer;
@@ -44,11 +43,11 @@ public class TradeTest {
         startFixEngine(eventProcessor);
         eventProcessor.addConsumer(ExecutionReport.class, getConsumer());
         Thread.sleep(3000);
-//        Order orderBuy = new Order(new Symbol("BTC/USDT",4,2), "11119", Side.Buy, new BigDecimal("9001.00"), new BigDecimal("0.01"));
+//        Order orderBuy = new Order(new Symbol("BTC/USDT",4,2), "11119", Side.Buy, FixedPoint.parse("9001.00", 2), FixedPoint.parse("0.01", 4));
 //        orders.put(orderBuy.getClOrdID(), orderBuy);
 //        eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, orderBuy));
 //        Thread.sleep(20000);
-        Order orderSell = new Order(new Symbol("BTC/USDT",4,2), "11121", Side.Sell, new BigDecimal("14000.00"), new BigDecimal("0.0001"));
+        Order orderSell = new Order(new Symbol("BTC/USDT",4,2), "11121", Side.Sell, FixedPoint.parse("14000.00", 2), FixedPoint.parse("0.0001", 4));
         orders.put(orderSell.getClOrdID(), orderSell);
         eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.add, orderSell));
         Thread.sleep(20000);
@@ -64,12 +63,12 @@ public class TradeTest {
         startFixEngine(eventProcessor);
         eventProcessor.addConsumer(ExecutionReport.class, getConsumer());
         Thread.sleep(3000);
-//        Order orderBuy = new Order(new Symbol("BTC/USDT",4,2), "11115", Side.Buy, new BigDecimal("9001.00"), new BigDecimal("0.01"));
+//        Order orderBuy = new Order(new Symbol("BTC/USDT",4,2), "11115", Side.Buy, FixedPoint.parse("9001.00", 2), FixedPoint.parse("0.01", 4));
 //        orders.put(orderBuy.getClOrdID(), orderBuy);
 //        orderBuy.setOrderID("10000071");
 //        eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.delete, orderBuy));
 //        Thread.sleep(20000);
-        Order orderSell = new Order(new Symbol("BTC/USDT",4,2), "6", Side.Sell, new BigDecimal("14000.00"), new BigDecimal("0.01"));
+        Order orderSell = new Order(new Symbol("BTC/USDT",4,2), "6", Side.Sell, FixedPoint.parse("14000.00", 2), FixedPoint.parse("0.01", 4));
         orders.put(orderSell.getClOrdID(), orderSell);
         orderSell.setOrderID("10000117");
         eventProcessor.putEvent(new OrderCommandEvent(OrderOperation.delete, orderSell));
@@ -0,0 +1,120 @@
+package io.xtrd.journal;
+
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.MarketData;
+import io.xtrd.trading.Side;
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.MarketDataEvent;
+import io.xtrd.trading.events.PriceEvent;
+import io.xtrd.trading.events.SessionStatus;
+import io.xtrd.trading.events.TradesEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTripAcrossSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        EventJournal journal = new EventJournal(directory, 4096);
+        journal.start();
+        journal.append(SessionStatus.CONNECTED);
+        Symbol symbol = new Symbol("BTC/USD", 4, 2);
+        for (int i = 0; i < 500; i++) {
+            journal.append(new MarketDataEvent(symbol, Arrays.asList(
+                    new MarketData(10025 + i * 100, 15, MarketData.Type.New, Side.Buy),
+                    new MarketData(Long.MAX_VALUE, 0, MarketData.Type.Delete, Side.Sell))));
+        }
+        journal.append(new TradesEvent(symbol, Arrays.asList(new MarketData(10100, 10000, MarketData.Type.Trade, null))));
+        journal.append(ExecutionReport.builder().setOrderId("1").setClOrdID("A-1").setOrderStatus(ExecutionReport.OrderStatus.FILLED)
+                .setSymbol("BTC/USD").setSide(Side.Sell).setLastPx(new BigDecimal("101.25"))
+                .setLastQty(new BigDecimal("0.5")).setCumQty(BigDecimal.ONE).setLeavesQty(BigDecimal.ZERO).setTransactionTime(42).build());
+        //not an input, never journaled
+        journal.append(new PriceEvent(symbol, 100, 0));
+        journal.stop();
+        assertEquals(503, journal.getWrittenCount());
+        assertTrue(EventJournal.segments(directory).size() > 1);
+
+        List<IEvent> events = readAll(directory);
+        assertEquals(503, events.size());
+        assertEquals(SessionStatus.CONNECTED, events.get(0));
+        MarketData level = ((MarketDataEvent) events.get(500)).getMarketData().get(0);
+        assertEquals(59925, level.getPrice());
+        assertEquals(15, level.getSize());
+        assertEquals(Side.Buy, level.getSide());
+        MarketData delete = ((MarketDataEvent) events.get(500)).getMarketData().get(1);
+        assertEquals(Long.MAX_VALUE, delete.getPrice());
+        assertEquals(0, delete.getSize());
+        assertNull(((TradesEvent) events.get(501)).getMarketData().get(0).getSide());
+        //one instance per name
+        Symbol decoded = ((MarketDataEvent) events.get(1)).getSymbol();
+        assertEquals("BTC/USD", decoded.getName());
+        assertEquals(2, decoded.getPricePower());
+        assertTrue(decoded == ((TradesEvent) events.get(501)).getSymbol());
+        ExecutionReport report = (ExecutionReport) events.get(502);
+        assertEquals("A-1", report.getClOrdID());
+        assertEquals(ExecutionReport.OrderStatus.FILLED, report.getOrderStatus());
+        assertEquals(new BigDecimal("0.5"), report.getLastQty());
+        assertEquals(new BigDecimal("101.25"), report.getLastPx());
+        assertEquals(Side.Sell, report.getSide());
+        assertEquals("BTC/USD", report.getSymbol());
+        assertNull(report.getCommission());
+        assertEquals(42, report.getTransactionTime());
+        assertNull(report.getText());
+    }
+
+    @Test
+    public void testCorruptedRecordIsDetected() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        EventJournal journal = new EventJournal(directory, 4096);
+        journal.start();
+        journal.append(SessionStatus.CONNECTED);
+        journal.append(SessionStatus.DISCONNECTED);
+        journal.stop();
+        try (RandomAccessFile file = new RandomAccessFile(EventJournal.segments(directory).get(0).toFile(), "rw")) {
+            //status byte of the second record, session status payloads are 18 bytes
+            long position = EventJournal.HEADER_SIZE + EventJournal.FRAME_SIZE + 18 + EventJournal.FRAME_SIZE + 17;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 1);
+        }
+        try (JournalReader reader = new JournalReader(directory)) {
+            assertEquals(SessionStatus.CONNECTED, reader.read().getEvent());
+            reader.read();
+            fail("Corruption not detected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+        }
+    }
+
+    private static List<IEvent> readAll(Path directory) throws IOException {
+        List<IEvent> result = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(directory)) {
+            JournalRecord record;
+            long sequence = 0;
+            while ((record = reader.read()) != null) {
+                assertEquals(++sequence, record.getSequence());
+                result.add(record.getEvent());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package io.xtrd.replay;
+
+import io.xtrd.journal.EventJournal;
+import io.xtrd.trading.ExecutionReport;
+import io.xtrd.trading.MarketData;
+import io.xtrd.trading.Side;
+import io.xtrd.trading.Symbol;
+import io.xtrd.trading.events.MarketDataEvent;
+import io.xtrd.trading.events.SessionStatus;
+import io.xtrd.trading.events.TradesEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayDriverTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayIsDeterministic() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        EventJournal journal = new EventJournal(directory, 1 << 20);
+        journal.start();
+        journal.append(SessionStatus.CONNECTED);
+        Random random = new Random(11);
+        Symbol symbol = new Symbol("BTC/USD", 4, 2);
+        long price = 10000;
+        for (int i = 0; i < 20000; i++) {
+            price += random.nextInt(41) - 20;
+            journal.append(new TradesEvent(symbol, Collections.singletonList(new MarketData(price, 10000, MarketData.Type.Trade, Side.Buy))));
+            journal.append(new MarketDataEvent(symbol, Arrays.asList(
+                    new MarketData(price - 100, 10000, MarketData.Type.Update, Side.Buy),
+                    new MarketData(price + 100, 10000, MarketData.Type.Update, Side.Sell))));
+        }
+        //recorded by a real session, the sand box answers instead
+        journal.append(ExecutionReport.builder().setClOrdID("1").setOrderStatus(ExecutionReport.OrderStatus.NEW).build());
+        journal.stop();
+
+        Properties config = new Properties();
+        config.setProperty("replay.symbol", "BTC/USD");
+        config.setProperty("replay.price.power", "2");
+        config.setProperty("replay.size.power", "4");
+        config.setProperty("renko.size", "1");
+        config.setProperty("order.size", "0.0001");
+        config.setProperty("order.max.positions.held", "3");
+        List<String> first = new ArrayList<>();
+        ReplayResult result = replay(config, directory, first);
+        List<String> second = new ArrayList<>();
+        replay(config, directory, second);
+
+        assertEquals(40001, result.getInputEvents());
+        assertEquals(1, result.getSkippedEvents());
+        assertTrue(result.getBricks() > 10);
+        assertTrue(result.getOrders() > 10);
+        assertTrue(result.getEventsPerSecond() > 0);
+        assertEquals(first, second);
+        //resting orders are never moved, a single series clears a side with one message
+        assertTrue(first.stream().noneMatch(line -> line.startsWith("order replace")));
+        assertTrue(first.stream().anyMatch(line -> line.startsWith("order massCancel")));
+    }
+
+    private static ReplayResult replay(Properties config, Path directory, List<String> output) throws Exception {
+        ReplayDriver driver = new ReplayDriver(config, directory);
+        driver.setOutput(output::add);
+        return driver.run();
+    }
+}
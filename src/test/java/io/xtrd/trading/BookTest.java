@@ -0,0 +1,169 @@
+package io.xtrd.trading;
+
+import io.xtrd.EventProcessor;
+import io.xtrd.WaitStrategy;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.MarketDataEvent;
+import io.xtrd.trading.events.PriceEvent;
+import io.xtrd.trading.events.ResubscribeEvent;
+import io.xtrd.trading.events.SequenceGapEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BookTest {
+    private static final Symbol SYMBOL = new Symbol("BTC/USD", 4, 2);
+
+    @Test
+    public void testDepthAwarePrices() throws Exception {
+        //bid 100.00 x 3, ask 100.10 x 1, a second ask level 100.20 x 4
+        List<MarketDataEvent> updates = Arrays.asList(
+                new MarketDataEvent(SYMBOL, Arrays.asList(
+                        new MarketData(10000, 30000, MarketData.Type.Snapshot, Side.Buy),
+                        new MarketData(10010, 10000, MarketData.Type.Snapshot, Side.Sell),
+                        new MarketData(10020, 40000, MarketData.Type.Snapshot, Side.Sell))));
+        assertEquals(Arrays.asList(10005L), prices(PriceSource.TOB_AVG, book -> {
+        }, updates));
+        //leans to the ask, there is less size left there
+        assertEquals(Arrays.asList(10008L), prices(PriceSource.MICROPRICE, book -> {
+        }, updates));
+        assertEquals(Arrays.asList(10003L), prices(PriceSource.WEIGHTED_MID, book -> {
+        }, updates));
+        //(100.00 x 3 + 100.10 x 1 + 100.20 x 4) / 8
+        assertEquals(Arrays.asList(10011L), prices(PriceSource.DEPTH_VWAP, book -> book.setDepthTicks(11), updates));
+    }
+
+    @Test
+    public void testMinPriceChange() throws Exception {
+        List<MarketDataEvent> updates = new ArrayList<>();
+        updates.add(new MarketDataEvent(SYMBOL, Arrays.asList(
+                new MarketData(10000, 10000, MarketData.Type.Snapshot, Side.Buy),
+                new MarketData(10010, 10000, MarketData.Type.Snapshot, Side.Sell))));
+        for (long bid = 10001; bid <= 10008; bid++) {
+            updates.add(new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(bid, 10000, MarketData.Type.New, Side.Buy))));
+        }
+        //mids 100.05, 100.06 (rounded up) to 100.09, only moves of three ticks are sent
+        assertEquals(Arrays.asList(10005L, 10008L), prices(PriceSource.TOB_AVG, book -> book.setMinPriceChange(3), updates));
+    }
+
+    @Test
+    public void testStaleUntilSnapshot() throws Exception {
+        MarketDataEvent snapshot = new MarketDataEvent(SYMBOL, Arrays.asList(
+                new MarketData(10000, 10000, MarketData.Type.Snapshot, Side.Buy),
+                new MarketData(10010, 10000, MarketData.Type.Snapshot, Side.Sell)));
+        List<IEvent> updates = Arrays.asList(
+                snapshot,
+                //no level there
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(9990, 0, MarketData.Type.Delete, Side.Buy))),
+                //dropped while stale
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(10002, 10000, MarketData.Type.New, Side.Buy))),
+                snapshot,
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(10020, 10000, MarketData.Type.New, Side.Buy))),
+                snapshot,
+                new SequenceGapEvent(SYMBOL, 7, 9),
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(10002, 10000, MarketData.Type.New, Side.Buy))),
+                snapshot,
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(10004, 10000, MarketData.Type.New, Side.Buy))));
+        List<Book> book = new ArrayList<>();
+        List<IEvent> resubscribes = new ArrayList<>();
+        List<Long> prices = prices(PriceSource.TOB_AVG, book::add, updates, resubscribes);
+        //the crossed bid is not published, the snapshots publish the same price again only after a change
+        assertEquals(Arrays.asList(10005L, 10007L), prices);
+        assertEquals(3, resubscribes.size());
+        assertEquals(3, book.get(0).getStaleCount());
+        assertTrue(!book.get(0).isStale());
+    }
+
+    @Test
+    public void testConflatedNewAndDeleteKeepBookFresh() throws Exception {
+        MarketDataConflator conflator = new MarketDataConflator();
+        MarketDataEvent conflated = conflator.conflate(
+                new MarketDataEvent(SYMBOL, Arrays.asList(
+                        new MarketData(9990, 10000, MarketData.Type.New, Side.Buy),
+                        new MarketData(9980, 10000, MarketData.Type.New, Side.Buy))),
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(9990, 0, MarketData.Type.Delete, Side.Buy))));
+        assertEquals(1, conflated.getMarketData().size());
+        assertEquals(9980, conflated.getMarketData().get(0).getPrice());
+        //nothing left, delivered one by one
+        assertNull(conflator.conflate(
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(9970, 10000, MarketData.Type.New, Side.Sell))),
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(9970, 0, MarketData.Type.Delete, Side.Sell)))));
+
+        List<Book> book = new ArrayList<>();
+        List<IEvent> resubscribes = new ArrayList<>();
+        prices(PriceSource.TOB_AVG, book::add, Arrays.asList(
+                new MarketDataEvent(SYMBOL, Arrays.asList(
+                        new MarketData(10000, 10000, MarketData.Type.Snapshot, Side.Buy),
+                        new MarketData(10010, 10000, MarketData.Type.Snapshot, Side.Sell))),
+                conflated), resubscribes);
+        assertTrue(resubscribes.isEmpty());
+        assertEquals(0, book.get(0).getStaleCount());
+    }
+
+    @Test
+    public void testLockedSnapshotIsNotStale() throws Exception {
+        List<Book> book = new ArrayList<>();
+        List<IEvent> resubscribes = new ArrayList<>();
+        List<Long> prices = prices(PriceSource.TOB_AVG, book::add, Arrays.asList(
+                new MarketDataEvent(SYMBOL, Arrays.asList(
+                        new MarketData(10000, 10000, MarketData.Type.Snapshot, Side.Buy),
+                        new MarketData(10000, 10000, MarketData.Type.Snapshot, Side.Sell))),
+                //locked by a delta too
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(10010, 10000, MarketData.Type.New, Side.Sell),
+                        new MarketData(10000, 0, MarketData.Type.Delete, Side.Sell),
+                        new MarketData(10010, 10000, MarketData.Type.New, Side.Buy)))), resubscribes);
+        assertEquals(Arrays.asList(10000L, 10010L), prices);
+        assertTrue(resubscribes.isEmpty());
+        assertEquals(0, book.get(0).getStaleCount());
+    }
+
+    @Test
+    public void testOtherSymbolsAreIgnored() throws Exception {
+        Symbol other = new Symbol("ETH/USD", 4, 2);
+        List<IEvent> updates = Arrays.asList(
+                new MarketDataEvent(SYMBOL, Arrays.asList(
+                        new MarketData(10000, 10000, MarketData.Type.Snapshot, Side.Buy),
+                        new MarketData(10010, 10000, MarketData.Type.Snapshot, Side.Sell))),
+                new MarketDataEvent(other, Arrays.asList(new MarketData(10008, 10000, MarketData.Type.New, Side.Buy))),
+                new SequenceGapEvent(other, 7, 9),
+                new MarketDataEvent(SYMBOL, Arrays.asList(new MarketData(10002, 10000, MarketData.Type.New, Side.Buy))));
+        List<IEvent> resubscribes = new ArrayList<>();
+        assertEquals(Arrays.asList(10005L, 10006L), prices(PriceSource.TOB_AVG, book -> {
+        }, updates, resubscribes));
+        assertTrue(resubscribes.isEmpty());
+    }
+
+    private static List<Long> prices(PriceSource priceSource, Consumer<Book> setup, List<? extends IEvent> updates) throws Exception {
+        return prices(priceSource, setup, updates, new ArrayList<>());
+    }
+
+    private static List<Long> prices(PriceSource priceSource, Consumer<Book> setup, List<? extends IEvent> updates, List<IEvent> resubscribes) throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(1 << 10, WaitStrategy.BLOCKING);
+        setup.accept(priceSource.attach(SYMBOL, eventProcessor, false));
+        List<Long> result = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(PriceEvent.class, (Consumer<PriceEvent>) event -> result.add(event.getPrice()));
+        eventProcessor.addConsumer(ResubscribeEvent.class, (Consumer<ResubscribeEvent>) resubscribes::add);
+        eventProcessor.addConsumer(Done.class, event -> done.countDown());
+        for (IEvent update : updates) {
+            eventProcessor.putEvent(update);
+        }
+        eventProcessor.putEvent(new Done());
+        eventProcessor.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+        return result;
+    }
+
+    private static class Done implements IEvent {
+    }
+}
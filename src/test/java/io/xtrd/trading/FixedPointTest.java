@@ -0,0 +1,38 @@
+package io.xtrd.trading;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FixedPointTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(900125, FixedPoint.parse("9001.25", 2));
+        assertEquals(900100, FixedPoint.parse("9001", 2));
+        assertEquals(900120, FixedPoint.parse("9001.2", 2));
+        assertEquals(900125, FixedPoint.parse("9001.2500", 2));
+        assertEquals(-1, FixedPoint.parse("-0.0001", 4));
+        assertEquals(FixedPoint.fromBigDecimal(new BigDecimal("0.0015"), 8), FixedPoint.parse("0.0015", 8));
+        try {
+            FixedPoint.parse("9001.255", 2);
+            fail();
+        } catch (ArithmeticException expected) {
+        }
+        try {
+            FixedPoint.parse("9001.2x", 2);
+            fail();
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    @Test
+    public void testToDecimal() {
+        assertEquals(new BigDecimal("9001.25"), FixedPoint.toBigDecimal(900125, 2));
+        assertEquals("0.0100", FixedPoint.toString(100, 4));
+        assertEquals("-1", FixedPoint.toString(-1, 0));
+    }
+}
@@ -0,0 +1,110 @@
+package io.xtrd.trading;
+
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.events.PriceEvent;
+import io.xtrd.trading.events.SessionStatus;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PositionEngineTest {
+    //prices in cents, sizes in 1/100, amounts in 1/10000
+    private static final Symbol SYMBOL = new Symbol("BTC/USD", 2, 2);
+
+    @Test
+    public void testOpenAddReduceAndFlip() {
+        PositionEngine engine = new PositionEngine(SYMBOL, new EventProcessor());
+        engine.fill(Side.Buy, 100, 10000, 0);
+        engine.fill(Side.Buy, 100, 12000, 0);
+        PositionSnapshot snapshot = engine.getSnapshot();
+        assertEquals(200, snapshot.getPosition());
+        assertEquals(11000, snapshot.getAveragePrice());
+
+        //half closed 10.00 above the average
+        engine.fill(Side.Sell, 100, 12000, 50);
+        snapshot = engine.getSnapshot();
+        assertEquals(100, snapshot.getPosition());
+        assertEquals(11000, snapshot.getAveragePrice());
+        assertEquals(100 * 1000, snapshot.getRealizedPnl());
+        assertEquals(50, snapshot.getFees());
+
+        //through zero, the rest is short at the fill price
+        engine.fill(Side.Sell, 300, 10000, 0);
+        snapshot = engine.getSnapshot();
+        assertEquals(-200, snapshot.getPosition());
+        assertEquals(10000, snapshot.getAveragePrice());
+        assertEquals(100 * 1000 - 100 * 1000, snapshot.getRealizedPnl());
+        assertEquals(4, snapshot.getFills());
+
+        engine.fill(Side.Buy, 200, 9000, 0);
+        snapshot = engine.getSnapshot();
+        assertEquals(0, snapshot.getPosition());
+        assertEquals(0, snapshot.getAveragePrice());
+        assertEquals(200 * 1000, snapshot.getRealizedPnl());
+        assertEquals(200 * 1000 - 50, snapshot.getNetPnl());
+    }
+
+    @Test
+    public void testOverflowingFillChangesNothing() {
+        PositionEngine engine = new PositionEngine(SYMBOL, new EventProcessor());
+        engine.fill(Side.Buy, 100, 10000, 0);
+        try {
+            engine.fill(Side.Buy, Long.MAX_VALUE / 2, 10000, 0);
+            fail();
+        } catch (ArithmeticException e) {
+            //expected
+        }
+        PositionSnapshot snapshot = engine.getSnapshot();
+        assertEquals(100, snapshot.getPosition());
+        assertEquals(10000, snapshot.getAveragePrice());
+        assertEquals(1, snapshot.getFills());
+    }
+
+    @Test
+    public void testPartialFillsAndMarks() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor();
+        PositionEngine engine = new PositionEngine(SYMBOL, eventProcessor);
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(SessionStatus.class, event -> done.countDown());
+        eventProcessor.start();
+        try {
+            eventProcessor.putEvent(fill("0.5", "100.00", ExecutionReport.OrderStatus.PARTIALLY_FILLED, "BTC/USD"));
+            eventProcessor.putEvent(fill("0.5", "102.00", ExecutionReport.OrderStatus.FILLED, "BTC/USD"));
+            //another symbol and a report without a fill
+            eventProcessor.putEvent(fill("1", "50.00", ExecutionReport.OrderStatus.FILLED, "ETH/USD"));
+            eventProcessor.putEvent(fill("0", "100.00", ExecutionReport.OrderStatus.NEW, "BTC/USD"));
+            eventProcessor.putEvent(new PriceEvent(SYMBOL, 10500, 0));
+            eventProcessor.putEvent(SessionStatus.DISCONNECTED);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            eventProcessor.stop();
+        }
+        PositionSnapshot snapshot = engine.getSnapshot();
+        assertEquals(100, snapshot.getPosition());
+        assertEquals(10100, snapshot.getAveragePrice());
+        assertEquals(10500, snapshot.getMarkPrice());
+        assertEquals(100 * 400, snapshot.getUnrealizedPnl());
+        assertEquals(100 * 10500, snapshot.getExposure());
+        assertEquals(2, snapshot.getFills());
+        assertEquals(0.01, engine.getFees(), 0);
+        assertEquals(4.0, engine.getUnrealizedPnl(), 0);
+    }
+
+    private static ExecutionReport fill(String lastQty, String lastPx, ExecutionReport.OrderStatus status, String symbol) {
+        return ExecutionReport.builder()
+                .setClOrdID("1")
+                .setSymbol(symbol)
+                .setSide(Side.Buy)
+                .setOrderStatus(status)
+                .setLastQty(new BigDecimal(lastQty))
+                .setLastPx(new BigDecimal(lastPx))
+                .setCommission(new BigDecimal("0.005"))
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package io.xtrd.trading;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriceLadderTest {
+
+    @Test
+    public void testSameTopAndDepthAsTreeMap() {
+        check(true);
+        check(false);
+    }
+
+    //a small window, the drifting price recentres it all the time
+    private static void check(boolean bids) {
+        PriceLadder ladder = new PriceLadder(bids, 64);
+        ladder.setBandTicks(5);
+        TreeMap<Long, Long> expected = bids ? new TreeMap<>(Collections.reverseOrder()) : new TreeMap<>();
+        Random random = new Random(bids ? 1 : 2);
+        long mid = 10000;
+        for (int i = 0; i < 200000; i++) {
+            mid += random.nextInt(3) - 1;
+            long price = mid + random.nextInt(200) - 100;
+            int action = random.nextInt(100);
+            if (action < 50) {
+                long size = random.nextInt(1000);
+                ladder.put(price, size);
+                expected.put(price, size);
+            } else if (action < 99) {
+                //deletes at existing levels most of the time
+                Map.Entry<Long, Long> level = expected.ceilingEntry(price);
+                long deleted = level == null ? price : level.getKey();
+                ladder.remove(deleted);
+                expected.remove(deleted);
+            } else {
+                ladder.clear();
+                expected.clear();
+            }
+            assertEquals(expected.isEmpty(), ladder.isEmpty());
+            if (!expected.isEmpty()) {
+                assertEquals((long) expected.firstKey(), ladder.bestPrice());
+                long best = expected.firstKey();
+                long bandSize = 0;
+                double bandNotional = 0;
+                for (Map.Entry<Long, Long> level : expected.headMap(bids ? best - 5 : best + 5).entrySet()) {
+                    bandSize += level.getValue();
+                    bandNotional += (double) level.getKey() * level.getValue();
+                }
+                assertEquals(bandSize, ladder.bandSize());
+                if (bandSize > 0) {
+                    assertEquals(bandNotional / bandSize, ladder.bandPrice(), 1e-6);
+                }
+            }
+        }
+        assertTrue(!expected.isEmpty());
+        for (Map.Entry<Long, Long> level : expected.entrySet()) {
+            assertEquals((long) level.getValue(), ladder.sizeAt(level.getKey()));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.xtrd.trading;
+
+import io.xtrd.EventProcessor;
+import io.xtrd.WaitStrategy;
+import io.xtrd.trading.events.IEvent;
+import io.xtrd.trading.events.PriceEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RenkoModelTest {
+    private static final Symbol SYMBOL = new Symbol("BTC/USD", 4, 2);
+
+    @Test
+    public void testGapIsOneBatch() throws Exception {
+        List<BrickBatch> batches = new ArrayList<>();
+        run(new long[]{10000, 10050, 10530, 10400, 9890}, 100, batches);
+        assertEquals(2, batches.size());
+        BrickBatch up = batches.get(0);
+        assertEquals(5, up.size());
+        assertEquals(10000, up.get(0).getOpen());
+        assertEquals(10500, up.getLast().getClose());
+        //one millisecond apart when formed by the same price
+        assertEquals(up.get(0).getTime() + 4, up.getLast().getTime());
+        BrickBatch down = batches.get(1);
+        assertEquals(5, down.size());
+        assertEquals(10400, down.get(0).getOpen());
+        assertEquals(9900, down.getLast().getClose());
+    }
+
+    @Test
+    public void testSameBricksAsOneByOne() throws Exception {
+        Random random = new Random(3);
+        long[] prices = new long[20000];
+        long price = 10000;
+        for (int i = 0; i < prices.length; i++) {
+            //mostly small moves, sometimes a gap of several bricks
+            price += random.nextInt(10) == 0 ? random.nextInt(2001) - 1000 : random.nextInt(41) - 20;
+            prices[i] = price;
+        }
+        List<BrickBatch> batches = new ArrayList<>();
+        run(prices, 100, batches);
+        List<String> bricks = new ArrayList<>();
+        for (BrickBatch batch : batches) {
+            for (int i = 0; i < batch.size(); i++) {
+                bricks.add(batch.get(i).getOpen() + "-" + batch.get(i).getClose());
+            }
+        }
+        assertTrue(batches.size() < bricks.size());
+        assertEquals(oneByOne(prices, 100), bricks);
+    }
+
+    @Test
+    public void testSeriesMatchSingleSizeModels() throws Exception {
+        Random random = new Random(5);
+        long[] prices = new long[20000];
+        long price = 10000;
+        for (int i = 0; i < prices.length; i++) {
+            price += random.nextInt(10) == 0 ? random.nextInt(2001) - 1000 : random.nextInt(41) - 20;
+            prices[i] = price;
+        }
+        long[] sizes = {100, 250, 40};
+        List<BrickBatch> batches = new ArrayList<>();
+        run(prices, sizes, batches);
+        for (int series = 0; series < sizes.length; series++) {
+            List<String> bricks = new ArrayList<>();
+            for (BrickBatch batch : batches) {
+                assertEquals(SYMBOL, batch.getSymbol());
+                for (int i = 0; i < batch.size() && batch.getSeries() == series; i++) {
+                    assertEquals(series, batch.get(i).getSeries());
+                    bricks.add(batch.get(i).getOpen() + "-" + batch.get(i).getClose());
+                }
+            }
+            assertEquals(oneByOne(prices, sizes[series]), bricks);
+        }
+    }
+
+    @Test
+    public void testReversalNeedsSeveralBricks() throws Exception {
+        List<BrickBatch> batches = new ArrayList<>();
+        run(new long[]{10000, 10100, 9950, 9800, 9900, 9700}, new long[]{100}, model -> model.setReversal(2), batches);
+        assertEquals(Arrays.asList("10000-10100", "10000-9900 9900-9800", "9800-9700"), describe(batches));
+    }
+
+    @Test
+    public void testPercentBox() throws Exception {
+        List<BrickBatch> batches = new ArrayList<>();
+        //one percent of the last brick close
+        run(new long[]{10000, 10100, 10200, 10201, 9999, 9998}, RenkoModel.parseSizes("1", RenkoBox.PARAMETER_POWER),
+                model -> model.setBox(RenkoBox.PERCENT), batches);
+        assertEquals(Arrays.asList("10000-10100", "10100-10201", "10100-9998"), describe(batches));
+    }
+
+    @Test
+    public void testGapIsCapped() throws Exception {
+        List<BrickBatch> batches = new ArrayList<>();
+        run(new long[]{10000, 10000 + 100L * 1_000_000 + 50, 10000 + 100L * 1_000_000 - 200}, 100, batches);
+        assertEquals(2, batches.size());
+        BrickBatch up = batches.get(0);
+        assertEquals(RenkoModel.MAX_BRICKS_PER_UPDATE, up.size());
+        //the series moved to the price, the last bricks are published
+        assertEquals(10000 + 100L * 1_000_000, up.getLast().getClose());
+        assertEquals(up.getLast().getClose() - 100L * RenkoModel.MAX_BRICKS_PER_UPDATE, up.get(0).getOpen());
+        assertEquals(up.getLast().getOpen(), batches.get(1).get(0).getOpen());
+    }
+
+    @Test
+    public void testAtrBox() throws Exception {
+        List<BrickBatch> batches = new ArrayList<>();
+        //two prices per one minute bar, no bricks until the first bar with a range is closed
+        run(new long[]{10000, 10050, 10000, 10000, 10060}, RenkoModel.parseSizes("1", RenkoBox.PARAMETER_POWER), model -> {
+            model.setBox(RenkoBox.ATR);
+            model.setAtrPeriod(2, 60_000L);
+        }, batches);
+        assertEquals(Arrays.asList("10000-10025 10025-10050"), describe(batches));
+    }
+
+    private static List<String> describe(List<BrickBatch> batches) {
+        List<String> result = new ArrayList<>();
+        for (BrickBatch batch : batches) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < batch.size(); i++) {
+                sb.append(i == 0 ? "" : " ").append(batch.get(i).getOpen()).append('-').append(batch.get(i).getClose());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    //a brick per step, like the recursive model did
+    private static List<String> oneByOne(long[] prices, long size) {
+        List<String> result = new ArrayList<>();
+        long top = prices[0];
+        long bottom = prices[0];
+        for (int i = 1; i < prices.length; i++) {
+            while (true) {
+                if (prices[i] >= top + size) {
+                    bottom = top;
+                    top = top + size;
+                    result.add(bottom + "-" + top);
+                } else if (prices[i] <= bottom - size) {
+                    top = bottom;
+                    bottom = bottom - size;
+                    result.add(top + "-" + bottom);
+                } else {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void run(long[] prices, long size, List<BrickBatch> batches) throws Exception {
+        run(prices, new long[]{size}, model -> {
+        }, batches);
+    }
+
+    private static void run(long[] prices, long[] sizes, List<BrickBatch> batches) throws Exception {
+        run(prices, sizes, model -> {
+        }, batches);
+    }
+
+    //thirty seconds pass with every price
+    private static void run(long[] prices, long[] sizes, Consumer<RenkoModel> setup, List<BrickBatch> batches) throws Exception {
+        EventProcessor eventProcessor = new EventProcessor(1 << 16, WaitStrategy.BLOCKING);
+        //bars are timed by the events, the dispatch clock stands still
+        eventProcessor.setClock(() -> 0L);
+        setup.accept(new RenkoModel(sizes, eventProcessor));
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(BrickBatch.class, (Consumer<BrickBatch>) batches::add);
+        eventProcessor.addConsumer(Done.class, event -> done.countDown());
+        for (int i = 0; i < prices.length; i++) {
+            eventProcessor.putEvent(new PriceEvent(SYMBOL, prices[i], (i + 1) * 30_000L));
+        }
+        eventProcessor.putEvent(new Done());
+        eventProcessor.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        eventProcessor.stop();
+    }
+
+    private static class Done implements IEvent {
+    }
+}
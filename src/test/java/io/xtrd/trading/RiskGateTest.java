@@ -0,0 +1,90 @@
+package io.xtrd.trading;
+
+import io.xtrd.EventProcessor;
+import io.xtrd.trading.events.PriceEvent;
+import io.xtrd.trading.events.SessionStatus;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RiskGateTest {
+    //prices in cents, sizes in 1/100
+    private static final Symbol SYMBOL = new Symbol("BTC/USD", 2, 2);
+
+    @Test
+    public void testLimits() {
+        EventProcessor eventProcessor = new EventProcessor();
+        PositionEngine positionEngine = new PositionEngine(SYMBOL, eventProcessor);
+        RiskGate gate = new RiskGate(SYMBOL, positionEngine, eventProcessor);
+        assertNull(gate.check(order("1", Side.Buy, 10000, 1000)));
+        gate.setMaxNotional(100 * 10000);
+        //size times price wraps to 0 in a long
+        assertEquals("max notional", gate.check(order("1", Side.Buy, 1L << 24, 1L << 40)));
+
+        gate.setMaxOrderSize(100);
+        assertEquals("max order size", gate.check(order("1", Side.Buy, 10000, 101)));
+        gate.setMaxNotional(100 * 10000);
+        assertEquals("max notional", gate.check(order("1", Side.Buy, 10001, 100)));
+        assertNull(gate.check(order("1", Side.Buy, 10000, 100)));
+
+        gate.setPriceCollarBps(100);
+        assertEquals("no price for the collar", gate.check(order("1", Side.Buy, 10000, 10)));
+        gate.setPriceCollarBps(0);
+
+        gate.setMaxPosition(150);
+        positionEngine.fill(Side.Buy, 100, 10000, 0);
+        Order buy = order("2", Side.Buy, 10000, 40);
+        assertTrue(gate.accept(buy));
+        assertEquals("max position", gate.check(order("3", Side.Buy, 10000, 20)));
+        //sells reduce a long position
+        assertNull(gate.check(order("3", Side.Sell, 10000, 100)));
+        gate.release(buy);
+        gate.release(buy);
+        assertEquals(0, gate.getOpenOrders());
+        assertNull(gate.check(order("3", Side.Buy, 10000, 50)));
+
+        gate.setMaxOpenOrders(1);
+        assertTrue(gate.accept(order("4", Side.Sell, 10000, 10)));
+        assertEquals("max open orders", gate.check(order("5", Side.Sell, 10000, 10)));
+        Order replace = order("6", Side.Sell, 10000, 10);
+        replace.setOrigClOrdID("4");
+        assertNull(gate.check(replace));
+    }
+
+    @Test
+    public void testCollarAndRejection() throws Exception {
+        EventProcessor eventProcessor = new EventProcessor();
+        RiskGate gate = new RiskGate(SYMBOL, null, eventProcessor);
+        gate.setPriceCollarBps(100);
+        List<ExecutionReport> reports = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventProcessor.addConsumer(ExecutionReport.class, (Consumer<ExecutionReport>) reports::add);
+        eventProcessor.addConsumer(SessionStatus.class, event -> done.countDown());
+        eventProcessor.start();
+        try {
+            eventProcessor.putEvent(new PriceEvent(SYMBOL, 10000, 0));
+            eventProcessor.putEvent(SessionStatus.CONNECTED);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            eventProcessor.stop();
+        }
+        assertNull(gate.check(order("1", Side.Buy, 10100, 10)));
+        assertNull(gate.check(order("1", Side.Sell, 9900, 10)));
+        assertFalse(gate.accept(order("2", Side.Buy, 10101, 10)));
+        assertEquals(1, gate.getRejects());
+        assertEquals(0, gate.getOpenOrders());
+    }
+
+    private static Order order(String clOrdID, Side side, long price, long size) {
+        return new Order(SYMBOL, clOrdID, side, price, size);
+    }
+}
@@ -0,0 +1,91 @@
+package io.xtrd.trading;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class WorkingOrdersTest {
+    private static final Symbol SYMBOL = new Symbol("BTC/USD", 4, 2);
+
+    @Test
+    public void testRangesBySide() {
+        WorkingOrders orders = new WorkingOrders(10);
+        orders.add(new Order(SYMBOL, "1", Side.Buy, 100, 1));
+        orders.add(new Order(SYMBOL, "2", Side.Buy, 105, 1));
+        orders.add(new Order(SYMBOL, "3", Side.Buy, 105, 1));
+        orders.add(new Order(SYMBOL, "4", Side.Sell, 103, 1));
+        orders.add(new Order(SYMBOL, "5", Side.Sell, 110, 1));
+        assertEquals(3, orders.count(Side.Buy));
+        assertEquals(2, orders.count(Side.Sell));
+
+        assertEquals("2,3", ids(result -> orders.collectAtOrAbove(Side.Buy, 101, result)));
+        assertEquals("1,2,3", ids(result -> orders.collectAtOrAbove(Side.Buy, 100, result)));
+        assertEquals("4", ids(result -> orders.collectAtOrBelow(Side.Sell, 109, result)));
+        assertEquals("2,3,1", ids(result -> orders.collect(Side.Buy, result)));
+        assertEquals("4,5", ids(result -> orders.collect(Side.Sell, result)));
+
+        assertEquals("2", orders.remove("2").getClOrdID());
+        assertNull(orders.remove("2"));
+        assertEquals("3,1", ids(result -> orders.collect(Side.Buy, result)));
+        assertEquals(2, orders.count(Side.Buy));
+    }
+
+    @Test
+    public void testArchiveIsBounded() {
+        WorkingOrders orders = new WorkingOrders(2);
+        for (int i = 0; i < 5; i++) {
+            Order order = new Order(SYMBOL, String.valueOf(i), Side.Sell, 100 + i, 1);
+            orders.add(order);
+            orders.archive(order);
+            assertFalse(orders.contains(order.getClOrdID()));
+        }
+        assertEquals(0, orders.size());
+        assertEquals(0, orders.count(Side.Sell));
+        List<String> archived = new ArrayList<>();
+        orders.archived().forEach(order -> archived.add(order.getClOrdID()));
+        assertEquals("[3, 4]", archived.toString());
+        Order order = new Order(SYMBOL, "5", Side.Buy, 100, 1);
+        orders.add(order);
+        assertSame(order, orders.get("5"));
+    }
+
+    @Test
+    public void testLevelsFarFromTheFirstOrder() {
+        WorkingOrders orders = new WorkingOrders(0);
+        orders.add(new Order(SYMBOL, "1", Side.Sell, 100_000, 1));
+        orders.add(new Order(SYMBOL, "2", Side.Sell, 10, 1));
+        orders.add(new Order(SYMBOL, "3", Side.Sell, 1_000_000, 1));
+        orders.add(new Order(SYMBOL, "4", Side.Sell, 100_001, 1));
+        assertEquals("2,1,4,3", ids(result -> orders.collect(Side.Sell, result)));
+        assertEquals("4,3", ids(result -> orders.collectAtOrAbove(Side.Sell, 100_001, result)));
+        assertEquals("4,1,2", ids(result -> orders.collectAtOrBelow(Side.Sell, 999_999, result)));
+
+        orders.remove("1");
+        orders.remove("4");
+        assertEquals("2,3", ids(result -> orders.collect(Side.Sell, result)));
+        orders.remove("2");
+        orders.remove("3");
+        assertEquals(0, orders.count(Side.Sell));
+        //an empty side is centred again on the next order
+        orders.add(new Order(SYMBOL, "5", Side.Sell, 10, 1));
+        orders.add(new Order(SYMBOL, "6", Side.Sell, 11, 1));
+        assertEquals("5,6", ids(result -> orders.collect(Side.Sell, result)));
+    }
+
+    private static String ids(Consumer<List<Order>> walk) {
+        List<Order> result = new ArrayList<>();
+        walk.accept(result);
+        StringBuilder sb = new StringBuilder();
+        for (Order order : result) {
+            sb.append(sb.length() == 0 ? "" : ",").append(order.getClOrdID());
+        }
+        return sb.toString();
+    }
+}